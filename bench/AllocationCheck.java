@@ -0,0 +1,80 @@
+import com.orbischallenge.ctz.objects.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+import java.lang.management.ManagementFactory;
+
+public class AllocationCheck {
+    /**
+     * The number of turns played on every map before measuring, so that the
+     * JIT has compiled the hot paths and every buffer has been sized, and the
+     * number of turns measured after that.
+     */
+    static final int WARMUP_TURNS = 100;
+    static final int MEASURED_TURNS = 150;
+
+    /**
+     * The most bytes PlayerAI may allocate per turn, on average, once warm.
+     * Anything in the hundreds of bytes is a few stray objects; a buffer
+     * that is reallocated every turn is thousands.
+     */
+    static final long DEFAULT_THRESHOLD = 512;
+
+    /**
+     * Plays PlayerAI against TriggerHappy on a few generated maps with the
+     * simulated engine, and measures how many bytes PlayerAI's turns
+     * allocate once warm. Only the call to doMove is measured, not the
+     * engine handing it the world.
+     *
+     * Prints the bytes per turn on every map, and exits with status 1 if any
+     * of them is over the threshold, which is given in bytes by the
+     * alloc.threshold system property, and is 512 by default.
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        long threshold = Long.getLong("alloc.threshold", DEFAULT_THRESHOLD);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)
+                        ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        SimulatedMatchFactory factory = new SimulatedMatchFactory(
+                WARMUP_TURNS + MEASURED_TURNS);
+        boolean failed = false;
+        MapFixture.Layout[] layouts = MapFixture.Layout.values();
+        for (int m = 0; m < layouts.length; m++) {
+            MapFixture fixture = MapFixture.generate(30 + m * 10, 20 + m * 5,
+                    0.2, layouts[m], 4, m + 1);
+            Simulation simulation = factory.createSimulation(fixture);
+            PlayerAI player = new PlayerAI();
+            TriggerHappy trigger = new TriggerHappy();
+            long allocated = 0;
+            int measured = 0;
+            for (int turn = 0; !simulation.isOver(); turn++) {
+                World world = simulation.getWorld();
+                EnemyUnit[] enemyUnits = simulation.getEnemyUnits(Team.BLUE);
+                FriendlyUnit[] friendlyUnits =
+                        simulation.getFriendlyUnits(Team.BLUE);
+                long bytes = threads.getThreadAllocatedBytes(thread);
+                player.doMove(world, enemyUnits, friendlyUnits);
+                bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+                if (turn >= WARMUP_TURNS) {
+                    allocated += bytes;
+                    measured++;
+                }
+                trigger.doMove(simulation.getWorld(),
+                        simulation.getEnemyUnits(Team.AMBER),
+                        simulation.getFriendlyUnits(Team.AMBER));
+                simulation.resolveTurn();
+            }
+            long perTurn = measured == 0 ? 0 : allocated / measured;
+            boolean over = perTurn > threshold;
+            failed |= over;
+            System.out.printf("%-28s %8d bytes/turn over %d turns%s%n",
+                    fixture.name, perTurn, measured, over ? "  FAILED" : "");
+        }
+        if (failed) {
+            System.out.printf("PlayerAI allocates more than %d bytes per "
+                    + "turn once warm%n", threshold);
+            System.exit(1);
+        }
+    }
+}
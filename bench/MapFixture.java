@@ -0,0 +1,258 @@
+import com.orbischallenge.ctz.objects.enums.*;
+
+import java.util.Random;
+
+public class MapFixture {
+    /**
+     * The ways the two teams can be placed on a generated map.
+     */
+    public enum Layout {
+        /**
+         * Each team starts huddled in opposite corners of the map.
+         */
+        CORNERS,
+
+        /**
+         * Every unit starts on a random open tile.
+         */
+        SCATTERED,
+
+        /**
+         * The teams start in two lines facing each other across the middle
+         * of the map, within shooting distance.
+         */
+        FACE_OFF
+    }
+
+    /**
+     * The width and height of the map.
+     */
+    final int width;
+    final int height;
+
+    /**
+     * Whether or not each tile is a wall, indexed by [x][y]. The border of
+     * the map is always walled, and every open tile can reach every other.
+     */
+    final boolean[][] walls;
+
+    /**
+     * The starting tiles of the blue and amber units.
+     */
+    final int[] blueX;
+    final int[] blueY;
+    final int[] amberX;
+    final int[] amberY;
+
+    /**
+     * The tiles and types of the pickups on the map.
+     */
+    final int[] pickupX;
+    final int[] pickupY;
+    final PickupType[] pickupTypes;
+
+    /**
+     * The tiles of the control points, and whether each is a mainframe.
+     */
+    final int[] controlX;
+    final int[] controlY;
+    final boolean[] mainframe;
+
+    /**
+     * A short description of how the map was generated, for reports.
+     */
+    final String name;
+
+    /**
+     * Creates an empty fixture of the given size, to be filled in by
+     * generate.
+     */
+    private MapFixture(String name, int width, int height, int units,
+                       int pickups, int controlPoints) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.walls = new boolean[width][height];
+        this.blueX = new int[units];
+        this.blueY = new int[units];
+        this.amberX = new int[units];
+        this.amberY = new int[units];
+        this.pickupX = new int[pickups];
+        this.pickupY = new int[pickups];
+        this.pickupTypes = new PickupType[pickups];
+        this.controlX = new int[controlPoints];
+        this.controlY = new int[controlPoints];
+        this.mainframe = new boolean[controlPoints];
+    }
+
+    /**
+     * Generates a random map. The same arguments always give the same map.
+     * @param width The width of the map, including its border.
+     * @param height The height of the map, including its border.
+     * @param wallDensity The chance of each inner tile being a wall.
+     * @param layout How the teams are placed.
+     * @param units The number of units on each team.
+     * @param seed The seed of the random numbers used.
+     * @return The generated map.
+     */
+    public static MapFixture generate(int width, int height,
+                                      double wallDensity, Layout layout,
+                                      int units, long seed) {
+        Random random = new Random(seed);
+        int area = width * height;
+        MapFixture fixture = new MapFixture(
+                width + "x" + height + "/" + wallDensity + "/" + layout
+                        + "/" + units,
+                width, height, units, Math.max(4, area / 100),
+                Math.max(3, area / 300));
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                fixture.walls[x][y] = x == 0 || y == 0 || x == width - 1
+                        || y == height - 1
+                        || random.nextDouble() < wallDensity;
+            }
+        }
+        // Units need room to start in, so the spawn areas are kept clear.
+        boolean[][] taken = new boolean[width][height];
+        fixture.placeTeams(layout, random, taken);
+        fixture.connect(taken);
+        for (int k = 0; k < fixture.pickupX.length; k++) {
+            int tile = fixture.randomOpenTile(random, taken);
+            fixture.pickupX[k] = tile / height;
+            fixture.pickupY[k] = tile % height;
+            PickupType[] types = PickupType.values();
+            fixture.pickupTypes[k] = types[random.nextInt(types.length)];
+        }
+        for (int k = 0; k < fixture.controlX.length; k++) {
+            int tile = fixture.randomOpenTile(random, taken);
+            fixture.controlX[k] = tile / height;
+            fixture.controlY[k] = tile % height;
+            fixture.mainframe[k] = k % 3 == 0;
+        }
+        return fixture;
+    }
+
+    /**
+     * Chooses the starting tiles of both teams, clearing any walls on them.
+     * @param layout How the teams are placed.
+     * @param random The source of random numbers.
+     * @param taken The tiles that are already in use, updated as units are
+     * placed.
+     */
+    private void placeTeams(Layout layout, Random random, boolean[][] taken) {
+        int units = this.blueX.length;
+        for (int i = 0; i < units; i++) {
+            int bx;
+            int by;
+            int ax;
+            int ay;
+            switch (layout) {
+                case CORNERS:
+                    bx = 1 + i % 2;
+                    by = 1 + i / 2;
+                    ax = this.width - 2 - i % 2;
+                    ay = this.height - 2 - i / 2;
+                    break;
+                case FACE_OFF:
+                    bx = this.width / 2 - 2;
+                    ax = this.width / 2 + 2;
+                    by = 1 + (this.height - 2) * (2 * i + 1) / (2 * units);
+                    ay = by;
+                    break;
+                default:
+                    bx = 1 + random.nextInt(this.width - 2);
+                    by = 1 + random.nextInt(this.height - 2);
+                    ax = 1 + random.nextInt(this.width - 2);
+                    ay = 1 + random.nextInt(this.height - 2);
+                    if (taken[bx][by] || taken[ax][ay] || (bx == ax
+                            && by == ay)) {
+                        i--;
+                        continue;
+                    }
+                    break;
+            }
+            this.walls[bx][by] = false;
+            this.walls[ax][ay] = false;
+            taken[bx][by] = true;
+            taken[ax][ay] = true;
+            this.blueX[i] = bx;
+            this.blueY[i] = by;
+            this.amberX[i] = ax;
+            this.amberY[i] = ay;
+        }
+    }
+
+    /**
+     * Walls off every open tile that can't reach the first blue unit, so that
+     * every unit can reach every other.
+     * @param taken The tiles the units start on, each of which is joined to
+     * the first blue unit by a corridor first.
+     */
+    private void connect(boolean[][] taken) {
+        // Join every unit to the first blue unit with an L-shaped corridor,
+        // then flood fill from it.
+        for (int x = 1; x < this.width - 1; x++) {
+            for (int y = 1; y < this.height - 1; y++) {
+                if (taken[x][y]) {
+                    this.clearCorridor(this.blueX[0], this.blueY[0], x, y);
+                }
+            }
+        }
+        boolean[][] reached = new boolean[this.width][this.height];
+        int[] queue = new int[this.width * this.height];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = this.blueX[0] * this.height + this.blueY[0];
+        reached[this.blueX[0]][this.blueY[0]] = true;
+        while (head < tail) {
+            int x = queue[head] / this.height;
+            int y = queue[head] % this.height;
+            head++;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (!this.walls[nx][ny] && !reached[nx][ny]) {
+                        reached[nx][ny] = true;
+                        queue[tail++] = nx * this.height + ny;
+                    }
+                }
+            }
+        }
+        for (int x = 0; x < this.width; x++) {
+            for (int y = 0; y < this.height; y++) {
+                this.walls[x][y] |= !reached[x][y];
+            }
+        }
+    }
+
+    /**
+     * Clears the walls along a horizontal then vertical path between two
+     * inner tiles.
+     */
+    private void clearCorridor(int x0, int y0, int x1, int y1) {
+        for (int x = Math.min(x0, x1); x <= Math.max(x0, x1); x++) {
+            this.walls[x][y0] = false;
+        }
+        for (int y = Math.min(y0, y1); y <= Math.max(y0, y1); y++) {
+            this.walls[x1][y] = false;
+        }
+    }
+
+    /**
+     * Picks a random open tile that is not in use yet, and marks it as used.
+     * @param random The source of random numbers.
+     * @param taken The tiles that are already in use.
+     * @return The tile, as x * height + y.
+     */
+    private int randomOpenTile(Random random, boolean[][] taken) {
+        while (true) {
+            int x = 1 + random.nextInt(this.width - 2);
+            int y = 1 + random.nextInt(this.height - 2);
+            if (!this.walls[x][y] && !taken[x][y]) {
+                taken[x][y] = true;
+                return x * this.height + y;
+            }
+        }
+    }
+}
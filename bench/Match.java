@@ -0,0 +1,23 @@
+import com.orbischallenge.ctz.objects.enums.*;
+
+public interface Match {
+    /**
+     * Asks a player for the actions of one team this turn, handing it the
+     * world as that team sees it.
+     * @param team The team the player controls.
+     * @param player The player deciding the actions.
+     */
+    void play(Team team, Player player);
+
+    /**
+     * Carries out the actions both teams chose, and moves on to the next
+     * turn.
+     */
+    void endTurn();
+
+    /**
+     * Determines whether the match has been decided.
+     * @return Whether or not the match is over.
+     */
+    boolean isOver();
+}
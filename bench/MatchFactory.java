@@ -0,0 +1,9 @@
+public interface MatchFactory {
+    /**
+     * Starts a new match on a generated map, with blue and amber units on
+     * their starting tiles.
+     * @param fixture The map to play on.
+     * @return The match, on its first turn.
+     */
+    Match create(MapFixture fixture);
+}
@@ -0,0 +1,65 @@
+import com.orbischallenge.ctz.objects.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+public class MatchRunner {
+    /**
+     * Plays PlayerAI against TriggerHappy on generated maps with the
+     * simulated engine, each AI taking each side once per map, and prints
+     * the score of every match and how many turns were played per second.
+     * Finally, the turn profiles of both AIs over every match are printed.
+     * @param args Optionally, the number of maps to play on, which defaults
+     * to 10, and the number of turns per match, which defaults to 300.
+     */
+    public static void main(String[] args) {
+        int maps = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int turnLimit = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        SimulatedMatchFactory factory = new SimulatedMatchFactory(turnLimit);
+        int playerWins = 0;
+        int triggerWins = 0;
+        long turns = 0;
+        TurnProfiler playerProfile = new TurnProfiler("PlayerAI");
+        TurnProfiler triggerProfile = new TurnProfiler("TriggerHappy");
+        long start = System.nanoTime();
+        for (int m = 0; m < maps; m++) {
+            MapFixture.Layout[] layouts = MapFixture.Layout.values();
+            MapFixture fixture = MapFixture.generate(30 + m % 3 * 10,
+                    20 + m % 2 * 10, 0.2, layouts[m % layouts.length], 4, m);
+            for (int side = 0; side < 2; side++) {
+                Team playerTeam = side == 0 ? Team.BLUE : Team.AMBER;
+                Simulation simulation = factory.createSimulation(fixture);
+                PlayerAI player = new PlayerAI();
+                TriggerHappy trigger = new TriggerHappy();
+                player.profiler = playerProfile;
+                trigger.profiler = triggerProfile;
+                while (!simulation.isOver()) {
+                    player.doMove(simulation.getWorld(),
+                            simulation.getEnemyUnits(playerTeam),
+                            simulation.getFriendlyUnits(playerTeam));
+                    trigger.doMove(simulation.getWorld(),
+                            simulation.getEnemyUnits(playerTeam.opponent()),
+                            simulation.getFriendlyUnits(
+                                    playerTeam.opponent()));
+                    simulation.resolveTurn();
+                    turns++;
+                }
+                Team leader = simulation.getLeader();
+                if (leader == playerTeam) {
+                    playerWins++;
+                } else if (leader == playerTeam.opponent()) {
+                    triggerWins++;
+                }
+                System.out.printf("%-28s PlayerAI (%s) %6d, "
+                        + "TriggerHappy %6d%n", fixture.name, playerTeam,
+                        simulation.getScore(playerTeam),
+                        simulation.getScore(playerTeam.opponent()));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("PlayerAI won %d, TriggerHappy won %d, %d drawn%n",
+                playerWins, triggerWins, 2 * maps - playerWins - triggerWins);
+        System.out.printf("%d turns in %.2f s, %.0f turns per second%n",
+                turns, seconds, turns / seconds);
+        playerProfile.report(System.out);
+        triggerProfile.report(System.out);
+    }
+}
@@ -0,0 +1,79 @@
+import benchmark.TurnDriver;
+import com.orbischallenge.ctz.objects.enums.*;
+
+import java.util.function.Supplier;
+
+public class MatchTurnDriver implements TurnDriver {
+    /**
+     * The match engine the map is played on.
+     */
+    MatchFactory matches;
+
+    /**
+     * The map every match is played on.
+     */
+    MapFixture fixture;
+
+    /**
+     * Create the AI being measured, which plays blue, and the AI it plays
+     * against, which plays amber.
+     */
+    Supplier<Player> subject;
+    Supplier<Player> opponent;
+
+    /**
+     * The match being played, and the AIs playing it.
+     */
+    Match match;
+    Player player;
+    Player other;
+
+    /**
+     * Generates the map and picks the AI being measured. The match engine is given by the bench.matchFactory system property,
+     * as the name of a MatchFactory class with a public no argument
+     * constructor, and is the simulated engine by default.
+     */
+    @Override
+    public void setUp(String ai, int width, int height, double density,
+                      String layout, long seed)
+            throws ReflectiveOperationException {
+        String factory = System.getProperty("bench.matchFactory",
+                SimulatedMatchFactory.class.getName());
+        this.matches = (MatchFactory)
+                Class.forName(factory).getDeclaredConstructor().newInstance();
+        this.fixture = MapFixture.generate(width, height, density,
+                MapFixture.Layout.valueOf(layout), 4, seed);
+        if (ai.equals("PlayerAI")) {
+            this.subject = () -> new PlayerAI()::doMove;
+            this.opponent = () -> new TriggerHappy()::doMove;
+        } else if (ai.equals("TriggerHappy")) {
+            this.subject = () -> new TriggerHappy()::doMove;
+            this.opponent = () -> new PlayerAI()::doMove;
+        } else {
+            throw new IllegalArgumentException("Unknown AI: " + ai);
+        }
+    }
+
+    @Override
+    public void newMatch() {
+        this.match = this.matches.create(this.fixture);
+        this.player = this.subject.get();
+        this.other = this.opponent.get();
+    }
+
+    @Override
+    public void playTurn() {
+        this.match.play(Team.BLUE, this.player);
+    }
+
+    @Override
+    public void finishTurn() {
+        this.match.play(Team.AMBER, this.other);
+        this.match.endTurn();
+        if (this.match.isOver()) {
+            newMatch();
+            playTurn();
+            finishTurn();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+import com.orbischallenge.ctz.objects.*;
+
+public interface Player {
+    /**
+     * Decides the actions of every friendly unit for one turn, exactly like
+     * PlayerAI.doMove and TriggerHappy.doMove.
+     * @param world The latest state of the world.
+     * @param enemyUnits An array of all units on the enemy team.
+     * @param friendlyUnits An array of all units on this player's team.
+     */
+    void doMove(World world, EnemyUnit[] enemyUnits,
+                FriendlyUnit[] friendlyUnits);
+}
@@ -0,0 +1,87 @@
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+public class SimulatedMatchFactory implements MatchFactory {
+    /**
+     * The number of turns every match lasts.
+     */
+    int turnLimit;
+
+    /**
+     * Creates matches of 300 turns.
+     */
+    public SimulatedMatchFactory() {
+        this(300);
+    }
+
+    /**
+     * Creates matches of the given length.
+     * @param turnLimit The number of turns every match lasts.
+     */
+    public SimulatedMatchFactory(int turnLimit) {
+        this.turnLimit = turnLimit;
+    }
+
+    @Override
+    public Match create(MapFixture fixture) {
+        final Simulation simulation = this.createSimulation(fixture);
+        return new Match() {
+            @Override
+            public void play(Team team, Player player) {
+                player.doMove(simulation.getWorld(),
+                        simulation.getEnemyUnits(team),
+                        simulation.getFriendlyUnits(team));
+            }
+
+            @Override
+            public void endTurn() {
+                simulation.resolveTurn();
+            }
+
+            @Override
+            public boolean isOver() {
+                return simulation.isOver();
+            }
+        };
+    }
+
+    /**
+     * Sets up a simulated match on a generated map.
+     * @param fixture The map to play on.
+     * @return The simulation, on its first turn.
+     */
+    public Simulation createSimulation(MapFixture fixture) {
+        return new Simulation(
+                copy(fixture.walls),
+                points(fixture.blueX, fixture.blueY),
+                points(fixture.amberX, fixture.amberY),
+                fixture.pickupTypes.clone(),
+                points(fixture.pickupX, fixture.pickupY),
+                points(fixture.controlX, fixture.controlY),
+                fixture.mainframe.clone(),
+                this.turnLimit);
+    }
+
+    /**
+     * Copies a grid, so that matches never share their walls.
+     */
+    private static boolean[][] copy(boolean[][] grid) {
+        boolean[][] copy = new boolean[grid.length][];
+        for (int x = 0; x < grid.length; x++) {
+            copy[x] = grid[x].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Turns matching arrays of coordinates into points.
+     */
+    private static Point[] points(int[] xs, int[] ys) {
+        Point[] points = new Point[xs.length];
+        for (int k = 0; k < xs.length; k++) {
+            points[k] = new Point(xs[k], ys[k]);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,180 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long PlayerAI and TriggerHappy take to play a turn, and how
+ * much they allocate, on a few generated map sizes, wall densities and
+ * starting layouts, with the usual four units a side.
+ *
+ * The AIs live in the default package, which JMH can't benchmark and this
+ * package can't import, so the matches are played by MatchTurnDriver,
+ * loaded by name. The match engine is given by the bench.matchFactory
+ * system property, as described there. The benchmarks fork with a fixed
+ * heap, so that resizing it doesn't show up in the timings, and with
+ * -Dai.analysisCache=none, so PlayerAI's first turn is timed from scratch;
+ * pass -jvmArgsAppend to change that, or to try -Dai.parallel=true.
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g",
+        "-Dai.analysisCache=none"})
+public class TurnBenchmark {
+    /**
+     * Used to read how many bytes the current thread has allocated.
+     */
+    static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean)
+                    ManagementFactory.getThreadMXBean();
+
+    /**
+     * The map and the AI being measured on it.
+     */
+    @State(Scope.Thread)
+    public static class Fixture {
+        @Param({"PlayerAI", "TriggerHappy"})
+        public String ai;
+
+        @Param({"20x20", "40x30", "80x60"})
+        public String size;
+
+        @Param({"0.1", "0.3"})
+        public double density;
+
+        @Param({"CORNERS", "SCATTERED", "FACE_OFF"})
+        public String layout;
+
+        @Param({"1"})
+        public long seed;
+
+        /**
+         * Creates a driver that plays matches on this map.
+         * @return The driver, with no match started yet.
+         * @throws ReflectiveOperationException If the driver or the match
+         * engine can't be created.
+         */
+        TurnDriver driver() throws ReflectiveOperationException {
+            TurnDriver driver = (TurnDriver) Class.forName("MatchTurnDriver")
+                    .getDeclaredConstructor().newInstance();
+            String[] dimensions = this.size.split("x");
+            driver.setUp(this.ai, Integer.parseInt(dimensions[0]),
+                    Integer.parseInt(dimensions[1]), this.density,
+                    this.layout, this.seed);
+            return driver;
+        }
+    }
+
+    /**
+     * A match that hasn't started, with new AIs, for every invocation. The
+     * first turn includes everything the AI computes up front.
+     */
+    @State(Scope.Thread)
+    public static class NewMatch {
+        TurnDriver driver;
+
+        @Setup(Level.Trial)
+        public void setUp(Fixture fixture)
+                throws ReflectiveOperationException {
+            this.driver = fixture.driver();
+        }
+
+        @Setup(Level.Invocation)
+        public void start() {
+            this.driver.newMatch();
+        }
+    }
+
+    /**
+     * A match that is kept going across invocations, starting over whenever
+     * it ends. Only the measured AI's turn is timed: the other AI's turn,
+     * and the first turn of every match, are played between invocations.
+     */
+    @State(Scope.Thread)
+    public static class RunningMatch {
+        TurnDriver driver;
+
+        @Setup(Level.Trial)
+        public void setUp(Fixture fixture)
+                throws ReflectiveOperationException {
+            this.driver = fixture.driver();
+            this.driver.newMatch();
+            this.driver.playTurn();
+            this.driver.finishTurn();
+        }
+
+        @TearDown(Level.Invocation)
+        public void finishTurn() {
+            this.driver.finishTurn();
+        }
+    }
+
+    /**
+     * Counts the bytes the measured AI's turns allocate, reported as the
+     * bytesPerTurn counter of every iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Allocation {
+        long bytes;
+        int turns;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.bytes = 0;
+            this.turns = 0;
+        }
+
+        public double bytesPerTurn() {
+            return this.turns == 0 ? 0 : (double) this.bytes / this.turns;
+        }
+    }
+
+    /**
+     * Times the first turn of a match.
+     * @param match A new match.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public void firstTurn(NewMatch match) {
+        match.driver.playTurn();
+    }
+
+    /**
+     * Times the turns after the first, sampling them so that the median and
+     * the tail are both reported.
+     * @param match A match past its first turn.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void steadyTurn(RunningMatch match) {
+        match.driver.playTurn();
+    }
+
+    /**
+     * Measures the bytes allocated by the turns after the first. This is
+     * kept apart from steadyTurn as reading the allocated bytes takes time
+     * of its own; -prof gc can't be used instead, as it also counts the
+     * other AI's turn and the engine.
+     * @param match A match past its first turn.
+     * @param allocation Counts the bytes allocated.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public void steadyTurnAllocation(RunningMatch match,
+                                     Allocation allocation) {
+        long bytes = THREADS.getCurrentThreadAllocatedBytes();
+        match.driver.playTurn();
+        allocation.bytes += THREADS.getCurrentThreadAllocatedBytes() - bytes;
+        allocation.turns++;
+    }
+}
@@ -0,0 +1,35 @@
+package benchmark;
+
+public interface TurnDriver {
+    /**
+     * Generates the map the matches are played on, and picks the AI being
+     * measured, which plays blue against the other AI.
+     * @param ai The AI being measured, PlayerAI or TriggerHappy.
+     * @param width The width of the map in tiles.
+     * @param height The height of the map in tiles.
+     * @param density The fraction of the inner tiles that are walls.
+     * @param layout The name of the MapFixture.Layout the units start in.
+     * @param seed The seed the map is generated from.
+     * @throws ReflectiveOperationException If the match engine can't be
+     * created.
+     */
+    void setUp(String ai, int width, int height, double density,
+               String layout, long seed) throws ReflectiveOperationException;
+
+    /**
+     * Starts a new match on the map, with new AIs on both sides.
+     */
+    void newMatch();
+
+    /**
+     * Asks the AI being measured for its actions this turn.
+     */
+    void playTurn();
+
+    /**
+     * Asks the other AI for its actions, and carries out the turn. If that
+     * ends the match, a new one is started and its whole first turn is
+     * played, so the next call to playTurn is never a first turn.
+     */
+    void finishTurn();
+}
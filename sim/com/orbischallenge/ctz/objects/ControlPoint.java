@@ -0,0 +1,34 @@
+package com.orbischallenge.ctz.objects;
+
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+public class ControlPoint {
+    /**
+     * The tile of the control point, and whether or not it is a mainframe.
+     */
+    private final Point position;
+    private final boolean mainframe;
+
+    /**
+     * The team holding the control point.
+     */
+    Team controllingTeam = Team.NONE;
+
+    ControlPoint(Point position, boolean mainframe) {
+        this.position = position;
+        this.mainframe = mainframe;
+    }
+
+    public Point getPosition() {
+        return this.position;
+    }
+
+    public boolean isMainframe() {
+        return this.mainframe;
+    }
+
+    public Team getControllingTeam() {
+        return this.controllingTeam;
+    }
+}
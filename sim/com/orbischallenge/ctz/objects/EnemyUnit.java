@@ -0,0 +1,7 @@
+package com.orbischallenge.ctz.objects;
+
+public class EnemyUnit extends Unit {
+    EnemyUnit(UnitState state) {
+        super(state);
+    }
+}
@@ -0,0 +1,55 @@
+package com.orbischallenge.ctz.objects;
+
+import com.orbischallenge.ctz.objects.enums.*;
+
+public class FriendlyUnit extends Unit {
+    FriendlyUnit(UnitState state) {
+        super(state);
+    }
+
+    /**
+     * Tells the unit to move one tile this turn. Like every action, this
+     * replaces any other action the unit was told to take this turn.
+     * @param direction The direction to move in.
+     */
+    public void move(Direction direction) {
+        this.state.clearAction();
+        this.state.action = UnitState.Action.MOVE;
+        this.state.moveDirection = direction;
+    }
+
+    /**
+     * Tells the unit to fire upon an enemy this turn.
+     * @param target The enemy to fire upon.
+     */
+    public void shootAt(EnemyUnit target) {
+        this.state.clearAction();
+        this.state.action = UnitState.Action.SHOOT;
+        this.state.shootTarget = target.state;
+    }
+
+    /**
+     * Tells the unit to pick up the item it is standing on this turn.
+     */
+    public void pickupItemAtPosition() {
+        this.state.clearAction();
+        this.state.action = UnitState.Action.PICKUP;
+    }
+
+    /**
+     * Tells the unit to raise one of its shields this turn.
+     */
+    public void activateShield() {
+        this.state.clearAction();
+        this.state.action = UnitState.Action.SHIELD;
+    }
+
+    /**
+     * Determines whether firing upon an enemy right now would deal damage.
+     * @param target The enemy in question.
+     * @return Why the shot would or would not hit.
+     */
+    public ShotResult checkShotAgainstEnemy(EnemyUnit target) {
+        return this.state.simulation.checkShot(this.state, target.state);
+    }
+}
@@ -0,0 +1,31 @@
+package com.orbischallenge.ctz.objects;
+
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+public class Pickup {
+    /**
+     * The type of the pickup and the tile it lies on.
+     */
+    private final PickupType pickupType;
+    private final Point position;
+
+    /**
+     * The number of turns until a pickup that was taken appears again, or
+     * zero if it is on the map.
+     */
+    int respawnCountdown;
+
+    Pickup(PickupType pickupType, Point position) {
+        this.pickupType = pickupType;
+        this.position = position;
+    }
+
+    public PickupType getPickupType() {
+        return this.pickupType;
+    }
+
+    public Point getPosition() {
+        return this.position;
+    }
+}
@@ -0,0 +1,468 @@
+package com.orbischallenge.ctz.objects;
+
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+public class Simulation {
+    /**
+     * The health units start and respawn with.
+     */
+    static final int MAX_HEALTH = 100;
+
+    /**
+     * The number of turns a shield lasts, including the turn it was raised.
+     */
+    static final int SHIELD_TURNS = 5;
+
+    /**
+     * The number of turns a dead unit waits before returning to its spawn,
+     * and the number of turns a pickup that was taken takes to come back.
+     */
+    static final int RESPAWN_TURNS = 10;
+    static final int PICKUP_RESPAWN_TURNS = 30;
+
+    /**
+     * The points a team earns every turn for each control point and each
+     * mainframe it holds.
+     */
+    static final int CONTROL_POINT_SCORE = 1;
+    static final int MAINFRAME_SCORE = 3;
+
+    /**
+     * The world both teams play in.
+     */
+    private final World world;
+
+    /**
+     * Every unit, blue first, then amber.
+     */
+    private final UnitState[] units;
+
+    /**
+     * Each team's view of its own units and of the other team's units.
+     */
+    private final FriendlyUnit[] blueFriendly;
+    private final EnemyUnit[] blueEnemy;
+    private final FriendlyUnit[] amberFriendly;
+    private final EnemyUnit[] amberEnemy;
+
+    /**
+     * The number of turns played so far, and the number after which the
+     * match ends.
+     */
+    private int turn;
+    private final int turnLimit;
+
+    /**
+     * The score of each team.
+     */
+    private int blueScore;
+    private int amberScore;
+
+    /**
+     * Scratch space for resolving moves, indexed by unit.
+     */
+    private final Point[] destinations;
+    private final boolean[] moving;
+    private final UnitState[] blockers;
+
+    /**
+     * Scratch space for the damage each unit takes this turn.
+     */
+    private final int[] damage;
+
+    /**
+     * Sets up a match.
+     * @param walls Whether or not each tile is a wall, indexed by [x][y].
+     * @param blueSpawns The starting tiles of the blue units.
+     * @param amberSpawns The starting tiles of the amber units.
+     * @param pickupTypes The type of every pickup.
+     * @param pickupPositions The tile of every pickup.
+     * @param controlPointPositions The tile of every control point.
+     * @param mainframes Whether or not each control point is a mainframe.
+     * @param turnLimit The number of turns the match lasts.
+     */
+    public Simulation(boolean[][] walls, Point[] blueSpawns,
+                      Point[] amberSpawns, PickupType[] pickupTypes,
+                      Point[] pickupPositions, Point[] controlPointPositions,
+                      boolean[] mainframes, int turnLimit) {
+        int count = blueSpawns.length + amberSpawns.length;
+        this.units = new UnitState[count];
+        this.blueFriendly = new FriendlyUnit[blueSpawns.length];
+        this.amberEnemy = new EnemyUnit[blueSpawns.length];
+        for (int i = 0; i < blueSpawns.length; i++) {
+            UnitState unit = new UnitState(this, Team.BLUE, "Blue " + i,
+                    blueSpawns[i]);
+            this.units[i] = unit;
+            this.blueFriendly[i] = unit.friendlyView;
+            this.amberEnemy[i] = unit.enemyView;
+        }
+        this.amberFriendly = new FriendlyUnit[amberSpawns.length];
+        this.blueEnemy = new EnemyUnit[amberSpawns.length];
+        for (int i = 0; i < amberSpawns.length; i++) {
+            UnitState unit = new UnitState(this, Team.AMBER, "Amber " + i,
+                    amberSpawns[i]);
+            this.units[blueSpawns.length + i] = unit;
+            this.amberFriendly[i] = unit.friendlyView;
+            this.blueEnemy[i] = unit.enemyView;
+        }
+        Pickup[] pickups = new Pickup[pickupTypes.length];
+        for (int k = 0; k < pickups.length; k++) {
+            pickups[k] = new Pickup(pickupTypes[k], pickupPositions[k]);
+        }
+        ControlPoint[] controlPoints =
+                new ControlPoint[controlPointPositions.length];
+        for (int k = 0; k < controlPoints.length; k++) {
+            controlPoints[k] = new ControlPoint(controlPointPositions[k],
+                    mainframes[k]);
+        }
+        this.world = new World(walls, pickups, controlPoints, this.units);
+        this.turnLimit = turnLimit;
+        this.destinations = new Point[count];
+        this.moving = new boolean[count];
+        this.blockers = new UnitState[count];
+        this.damage = new int[count];
+    }
+
+    public World getWorld() {
+        return this.world;
+    }
+
+    /**
+     * Lists the units of a team, as that team sees them.
+     * @param team The team in question.
+     * @return The units of the team, always in the same order.
+     */
+    public FriendlyUnit[] getFriendlyUnits(Team team) {
+        return team == Team.BLUE ? this.blueFriendly : this.amberFriendly;
+    }
+
+    /**
+     * Lists the units of the other team, as a team sees them.
+     * @param team The team in question.
+     * @return The units of the other team, always in the same order.
+     */
+    public EnemyUnit[] getEnemyUnits(Team team) {
+        return team == Team.BLUE ? this.blueEnemy : this.amberEnemy;
+    }
+
+    public int getTurn() {
+        return this.turn;
+    }
+
+    public int getScore(Team team) {
+        return team == Team.BLUE ? this.blueScore : this.amberScore;
+    }
+
+    public boolean isOver() {
+        return this.turn >= this.turnLimit;
+    }
+
+    /**
+     * Finds the team that is ahead.
+     * @return The team with the higher score, or NONE if they are level.
+     */
+    public Team getLeader() {
+        if (this.blueScore == this.amberScore) {
+            return Team.NONE;
+        }
+        return this.blueScore > this.amberScore ? Team.BLUE : Team.AMBER;
+    }
+
+    /**
+     * Determines whether a unit firing upon another right now would deal
+     * damage.
+     * @param shooter The unit firing.
+     * @param target The unit fired upon.
+     * @return Why the shot would or would not hit.
+     */
+    ShotResult checkShot(UnitState shooter, UnitState target) {
+        if (!shooter.isAlive()) {
+            return ShotResult.SHOOTER_DEAD;
+        }
+        if (!target.isAlive()) {
+            return ShotResult.TARGET_DEAD;
+        }
+        int dx = target.position.getX() - shooter.position.getX();
+        int dy = target.position.getY() - shooter.position.getY();
+        if ((dx != 0 && dy != 0 && Math.abs(dx) != Math.abs(dy))
+                || Math.max(Math.abs(dx), Math.abs(dy))
+                > shooter.weapon.getRange()) {
+            return ShotResult.TARGET_OUT_OF_RANGE;
+        }
+        if (!this.world.canShooterShootTarget(shooter.position,
+                target.position, shooter.weapon.getRange())) {
+            return ShotResult.BLOCKED_BY_WALL;
+        }
+        if (target.shieldedTurnsRemaining > 0) {
+            return ShotResult.TARGET_SHIELDED;
+        }
+        return ShotResult.CAN_HIT_ENEMY;
+    }
+
+    /**
+     * Carries out the actions both teams chose, and moves on to the next
+     * turn.
+     *
+     * Shields go up first, then every shot is fired at once, from where the
+     * units stood at the start of the turn. Then items are picked up, and
+     * finally units move. A unit can't move onto a tile another unit stays
+     * on or is also moving onto, nor swap places with another unit.
+     */
+    public void resolveTurn() {
+        for (UnitState unit : this.units) {
+            if (unit.shieldedTurnsRemaining > 0) {
+                unit.shieldedTurnsRemaining--;
+            }
+            unit.lastActionSucceeded = unit.action == UnitState.Action.NONE;
+            unit.lastMoveResult = MoveResult.NO_MOVE_ATTEMPTED;
+            if (!unit.isAlive()) {
+                unit.clearAction();
+            }
+        }
+        this.resolveShields();
+        this.resolveShots();
+        this.resolvePickups();
+        this.resolveMoves();
+        this.updateControlPoints();
+        this.respawn();
+        for (UnitState unit : this.units) {
+            unit.clearAction();
+        }
+        this.turn++;
+    }
+
+    /**
+     * Raises the shields of units that asked to, if they have one left.
+     */
+    private void resolveShields() {
+        for (UnitState unit : this.units) {
+            if (unit.action == UnitState.Action.SHIELD && unit.numShields > 0
+                    && unit.shieldedTurnsRemaining == 0) {
+                unit.numShields--;
+                unit.shieldedTurnsRemaining = SHIELD_TURNS;
+                unit.lastActionSucceeded = true;
+            }
+        }
+    }
+
+    /**
+     * Fires every shot at once, so that a unit killed this turn still gets
+     * its own shot off.
+     */
+    private void resolveShots() {
+        int[] damage = this.damage;
+        java.util.Arrays.fill(damage, 0);
+        for (UnitState unit : this.units) {
+            if (unit.action != UnitState.Action.SHOOT
+                    || this.checkShot(unit, unit.shootTarget)
+                    != ShotResult.CAN_HIT_ENEMY) {
+                continue;
+            }
+            for (int k = 0; k < this.units.length; k++) {
+                if (this.units[k] == unit.shootTarget) {
+                    damage[k] += unit.weapon.getDamage();
+                }
+            }
+            unit.lastActionSucceeded = true;
+        }
+        for (int k = 0; k < this.units.length; k++) {
+            UnitState unit = this.units[k];
+            if (damage[k] > 0) {
+                unit.health = Math.max(0, unit.health - damage[k]);
+                if (!unit.isAlive()) {
+                    unit.respawnCountdown = RESPAWN_TURNS;
+                    unit.shieldedTurnsRemaining = 0;
+                    unit.clearAction();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives units the items they are standing on, if they asked for them.
+     */
+    private void resolvePickups() {
+        boolean changed = false;
+        for (UnitState unit : this.units) {
+            if (unit.action != UnitState.Action.PICKUP) {
+                continue;
+            }
+            Pickup pickup = this.world.getPickupAtPosition(unit.position);
+            if (pickup == null) {
+                continue;
+            }
+            switch (pickup.getPickupType()) {
+                case SHIELD:
+                    unit.numShields++;
+                    break;
+                case REPAIR_KIT:
+                    unit.health = MAX_HEALTH;
+                    break;
+                case WEAPON_LASER_RIFLE:
+                    unit.weapon = WeaponType.LASER_RIFLE;
+                    break;
+                case WEAPON_MINI_BLASTER:
+                    unit.weapon = WeaponType.MINI_BLASTER;
+                    break;
+                case WEAPON_SCATTER_GUN:
+                    unit.weapon = WeaponType.SCATTER_GUN;
+                    break;
+                case WEAPON_RAIL_GUN:
+                    unit.weapon = WeaponType.RAIL_GUN;
+                    break;
+            }
+            pickup.respawnCountdown = PICKUP_RESPAWN_TURNS;
+            unit.lastActionSucceeded = true;
+            changed = true;
+        }
+        if (changed) {
+            this.world.refreshPickups();
+        }
+    }
+
+    /**
+     * Moves every unit that asked to, unless it is blocked.
+     *
+     * Every move starts out allowed. A move is then blocked if any other
+     * unit ends up on the same tile, or if it swaps places with another
+     * unit. A blocked unit stays where it is, which may block others in
+     * turn, so this repeats until nothing changes.
+     */
+    private void resolveMoves() {
+        int count = this.units.length;
+        for (int u = 0; u < count; u++) {
+            UnitState unit = this.units[u];
+            this.moving[u] = false;
+            if (unit.action != UnitState.Action.MOVE) {
+                continue;
+            }
+            if (unit.moveDirection == Direction.NOWHERE) {
+                unit.lastMoveResult = MoveResult.MOVE_COMPLETED;
+                unit.lastActionSucceeded = true;
+                continue;
+            }
+            Point destination = unit.moveDirection.movePoint(unit.position);
+            if (!this.world.isPassable(destination.getX(),
+                    destination.getY())) {
+                unit.lastMoveResult = MoveResult.BLOCKED_BY_WALL;
+                continue;
+            }
+            this.destinations[u] = destination;
+            this.moving[u] = true;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int u = 0; u < count; u++) {
+                this.blockers[u] = this.moving[u] ? this.findBlocker(u) : null;
+            }
+            for (int u = 0; u < count; u++) {
+                if (this.blockers[u] != null) {
+                    UnitState unit = this.units[u];
+                    this.moving[u] = false;
+                    unit.lastMoveResult = this.blockers[u].team == unit.team
+                            ? MoveResult.BLOCKED_BY_FRIENDLY
+                            : MoveResult.BLOCKED_BY_ENEMY;
+                    changed = true;
+                }
+            }
+        }
+        for (int u = 0; u < count; u++) {
+            if (this.moving[u]) {
+                UnitState unit = this.units[u];
+                unit.position = this.destinations[u];
+                unit.lastMoveResult = MoveResult.MOVE_COMPLETED;
+                unit.lastActionSucceeded = true;
+            }
+        }
+    }
+
+    /**
+     * Finds a unit that keeps a moving unit from completing its move.
+     * @param u The index of the moving unit.
+     * @return A unit in the way, or null if the move can go ahead.
+     */
+    private UnitState findBlocker(int u) {
+        Point destination = this.destinations[u];
+        Point start = this.units[u].position;
+        for (int v = 0; v < this.units.length; v++) {
+            UnitState other = this.units[v];
+            if (v == u || !other.isAlive()) {
+                continue;
+            }
+            Point end = this.moving[v] ? this.destinations[v] : other.position;
+            if (end.equals(destination) || (this.moving[v]
+                    && end.equals(start)
+                    && other.position.equals(destination))) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hands every control point to the team with a living unit on it, and
+     * scores the control points each team holds.
+     */
+    private void updateControlPoints() {
+        for (ControlPoint cp : this.world.controlPoints) {
+            for (UnitState unit : this.units) {
+                if (unit.isAlive() && unit.position.equals(cp.getPosition())) {
+                    cp.controllingTeam = unit.team;
+                }
+            }
+            int score = cp.isMainframe()
+                    ? MAINFRAME_SCORE
+                    : CONTROL_POINT_SCORE;
+            if (cp.controllingTeam == Team.BLUE) {
+                this.blueScore += score;
+            } else if (cp.controllingTeam == Team.AMBER) {
+                this.amberScore += score;
+            }
+        }
+    }
+
+    /**
+     * Counts down the dead units and the pickups that were taken, and puts
+     * them back once their time is up. A unit whose spawn is occupied waits
+     * until it is free.
+     */
+    private void respawn() {
+        for (UnitState unit : this.units) {
+            if (unit.isAlive()) {
+                continue;
+            }
+            if (unit.respawnCountdown > 0) {
+                unit.respawnCountdown--;
+            }
+            if (unit.respawnCountdown == 0 && !this.isOccupied(unit.spawn)) {
+                unit.respawn();
+            }
+        }
+        boolean changed = false;
+        for (Pickup pickup : this.world.allPickups) {
+            if (pickup.respawnCountdown > 0) {
+                pickup.respawnCountdown--;
+                changed |= pickup.respawnCountdown == 0;
+            }
+        }
+        if (changed) {
+            this.world.refreshPickups();
+        }
+    }
+
+    /**
+     * Determines whether a living unit stands on a tile.
+     * @param p The tile in question.
+     * @return Whether or not the tile is occupied.
+     */
+    private boolean isOccupied(Point p) {
+        for (UnitState unit : this.units) {
+            if (unit.isAlive() && unit.position.equals(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,57 @@
+package com.orbischallenge.ctz.objects;
+
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+public class Unit {
+    /**
+     * The unit this is a view of. The same unit is seen as a friendly unit
+     * by its own team and as an enemy unit by the other.
+     */
+    final UnitState state;
+
+    Unit(UnitState state) {
+        this.state = state;
+    }
+
+    public int getHealth() {
+        return this.state.health;
+    }
+
+    public Point getPosition() {
+        return this.state.position;
+    }
+
+    public WeaponType getCurrentWeapon() {
+        return this.state.weapon;
+    }
+
+    public int getShieldedTurnsRemaining() {
+        return this.state.shieldedTurnsRemaining;
+    }
+
+    public int getNumShields() {
+        return this.state.numShields;
+    }
+
+    public Team getTeam() {
+        return this.state.team;
+    }
+
+    public String getCallSign() {
+        return this.state.callSign;
+    }
+
+    public boolean didLastActionSucceed() {
+        return this.state.lastActionSucceeded;
+    }
+
+    public MoveResult getLastMoveResult() {
+        return this.state.lastMoveResult;
+    }
+
+    @Override
+    public String toString() {
+        return this.state.callSign + " " + this.state.position;
+    }
+}
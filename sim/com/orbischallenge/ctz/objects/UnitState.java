@@ -0,0 +1,105 @@
+package com.orbischallenge.ctz.objects;
+
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+class UnitState {
+    /**
+     * The actions a unit can be told to take on a turn.
+     */
+    enum Action {
+        NONE,
+        MOVE,
+        SHOOT,
+        PICKUP,
+        SHIELD
+    }
+
+    /**
+     * The simulation this unit takes part in.
+     */
+    final Simulation simulation;
+
+    /**
+     * The team of the unit, its name, and the tile it returns to after dying.
+     */
+    final Team team;
+    final String callSign;
+    final Point spawn;
+
+    /**
+     * The current state of the unit.
+     */
+    Point position;
+    int health;
+    WeaponType weapon;
+    int numShields;
+    int shieldedTurnsRemaining;
+
+    /**
+     * The number of turns until a dead unit returns to its spawn.
+     */
+    int respawnCountdown;
+
+    /**
+     * The action the unit was told to take this turn, and its argument.
+     */
+    Action action = Action.NONE;
+    Direction moveDirection;
+    UnitState shootTarget;
+
+    /**
+     * The outcome of the action the unit took last turn.
+     */
+    boolean lastActionSucceeded = true;
+    MoveResult lastMoveResult = MoveResult.NO_MOVE_ATTEMPTED;
+
+    /**
+     * How the unit is seen by its own team and by the other team.
+     */
+    final FriendlyUnit friendlyView;
+    final EnemyUnit enemyView;
+
+    /**
+     * Creates a unit on its spawn, at full health.
+     * @param simulation The simulation the unit takes part in.
+     * @param team The team of the unit.
+     * @param callSign The name of the unit.
+     * @param spawn The tile the unit starts on.
+     */
+    UnitState(Simulation simulation, Team team, String callSign,
+              Point spawn) {
+        this.simulation = simulation;
+        this.team = team;
+        this.callSign = callSign;
+        this.spawn = spawn;
+        this.respawn();
+        this.friendlyView = new FriendlyUnit(this);
+        this.enemyView = new EnemyUnit(this);
+    }
+
+    /**
+     * Puts the unit back on its spawn with full health and the starting
+     * weapon.
+     */
+    void respawn() {
+        this.position = this.spawn;
+        this.health = Simulation.MAX_HEALTH;
+        this.weapon = WeaponType.MINI_BLASTER;
+        this.shieldedTurnsRemaining = 0;
+        this.respawnCountdown = 0;
+    }
+
+    /**
+     * Forgets the action the unit was told to take.
+     */
+    void clearAction() {
+        this.action = Action.NONE;
+        this.moveDirection = null;
+        this.shootTarget = null;
+    }
+
+    boolean isAlive() {
+        return this.health > 0;
+    }
+}
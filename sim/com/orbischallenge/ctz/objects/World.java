@@ -0,0 +1,318 @@
+package com.orbischallenge.ctz.objects;
+
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+public class World {
+    /**
+     * The width and height of the map.
+     */
+    final int width;
+    final int height;
+
+    /**
+     * Whether or not each tile is a wall, indexed by [x][y].
+     */
+    final boolean[][] walls;
+
+    /**
+     * Every pickup, whether or not it is on the map right now, and the pickup
+     * on each tile, indexed by x * height + y, or null if there is none.
+     */
+    final Pickup[] allPickups;
+    final Pickup[] pickupAt;
+
+    /**
+     * The pickups on the map right now. Rebuilt only when a pickup is taken
+     * or comes back, so that asking for it every turn costs nothing.
+     */
+    private Pickup[] pickups;
+
+    /**
+     * The control points on the map.
+     */
+    final ControlPoint[] controlPoints;
+
+    /**
+     * Every unit on the map, of both teams.
+     */
+    final UnitState[] units;
+
+    /**
+     * The length of the shortest path from every tile to a destination,
+     * indexed by [destination][tile] with both as x * height + y, or -1 if
+     * the tile can't reach the destination. Each row is filled in the first
+     * time a path to that destination is asked for.
+     */
+    private final int[][] fields;
+
+    /**
+     * Scratch space for the breadth first search that fills in a row above.
+     */
+    private final int[] queue;
+
+    World(boolean[][] walls, Pickup[] pickups, ControlPoint[] controlPoints,
+          UnitState[] units) {
+        this.width = walls.length;
+        this.height = walls[0].length;
+        this.walls = walls;
+        this.allPickups = pickups;
+        this.pickupAt = new Pickup[this.width * this.height];
+        for (Pickup p : pickups) {
+            this.pickupAt[this.index(p.getPosition())] = p;
+        }
+        this.pickups = pickups.clone();
+        this.controlPoints = controlPoints;
+        this.units = units;
+        this.fields = new int[this.width * this.height][];
+        this.queue = new int[this.width * this.height];
+    }
+
+    /**
+     * Finds where a tile is stored in the tables above.
+     * @param p The tile in question, which must be on the map.
+     * @return The index of the tile.
+     */
+    int index(Point p) {
+        return p.getX() * this.height + p.getY();
+    }
+
+    /**
+     * Determines whether a unit could stand on a tile.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return Whether or not the tile is on the map and not a wall.
+     */
+    boolean isPassable(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height
+                && !this.walls[x][y];
+    }
+
+    /**
+     * Rebuilds the list of pickups on the map, after one was taken or came
+     * back.
+     */
+    void refreshPickups() {
+        int count = 0;
+        for (Pickup p : this.allPickups) {
+            if (p.respawnCountdown == 0) {
+                count++;
+            }
+        }
+        this.pickups = new Pickup[count];
+        count = 0;
+        for (Pickup p : this.allPickups) {
+            if (p.respawnCountdown == 0) {
+                this.pickups[count++] = p;
+            }
+        }
+    }
+
+    /**
+     * Looks up the shortest path lengths to a tile from every other tile,
+     * computing them first if this is the first time they are needed.
+     * @param destination The index of the destination.
+     * @return The path lengths, indexed by tile, or -1 for unreachable tiles.
+     */
+    private int[] getField(int destination) {
+        int[] field = this.fields[destination];
+        if (field != null) {
+            return field;
+        }
+        field = new int[this.width * this.height];
+        java.util.Arrays.fill(field, -1);
+        int head = 0;
+        int tail = 0;
+        this.queue[tail++] = destination;
+        field[destination] = 0;
+        while (head < tail) {
+            int current = this.queue[head++];
+            int x = current / this.height;
+            int y = current % this.height;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int next = (x + dx) * this.height + y + dy;
+                    if (this.isPassable(x + dx, y + dy) && field[next] < 0) {
+                        field[next] = field[current] + 1;
+                        this.queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        this.fields[destination] = field;
+        return field;
+    }
+
+    /**
+     * Finds the length of the shortest path between two tiles, moving in any
+     * of the eight directions.
+     * @param start The start of the path.
+     * @param end The end of the path.
+     * @return The number of steps on the path. If there is no path, this is
+     * the number of tiles on the map, which is longer than any path.
+     */
+    public int getPathLength(Point start, Point end) {
+        if (!this.isPassable(start.getX(), start.getY())
+                || !this.isPassable(end.getX(), end.getY())) {
+            return this.width * this.height;
+        }
+        int length = this.getField(this.index(end))[this.index(start)];
+        return length < 0 ? this.width * this.height : length;
+    }
+
+    /**
+     * Finds the first step along a shortest path between two tiles.
+     * @param start The start of the path.
+     * @param end The end of the path.
+     * @return The direction of the first step, or NOWHERE if the tiles are
+     * the same or there is no path.
+     */
+    public Direction getNextDirectionInPath(Point start, Point end) {
+        if (start.equals(end) || !this.isPassable(start.getX(), start.getY())
+                || !this.isPassable(end.getX(), end.getY())) {
+            return Direction.NOWHERE;
+        }
+        int[] field = this.getField(this.index(end));
+        int here = field[this.index(start)];
+        if (here < 0) {
+            return Direction.NOWHERE;
+        }
+        for (Direction d : Direction.values()) {
+            int x = start.getX() + d.getDx();
+            int y = start.getY() + d.getDy();
+            if (this.isPassable(x, y) && field[x * this.height + y]
+                    == here - 1) {
+                return d;
+            }
+        }
+        return Direction.NOWHERE;
+    }
+
+    /**
+     * Determines whether a shot could travel from one tile to another. Shots
+     * only travel in the eight directions, and are stopped by the first wall
+     * in their way, but not by units.
+     * @param shooter The tile the shot is fired from.
+     * @param target The tile the shot is aimed at.
+     * @param range The range of the gun.
+     * @return Whether or not the shot reaches the target.
+     */
+    public boolean canShooterShootTarget(Point shooter, Point target,
+                                         int range) {
+        int dx = target.getX() - shooter.getX();
+        int dy = target.getY() - shooter.getY();
+        if (dx != 0 && dy != 0 && Math.abs(dx) != Math.abs(dy)) {
+            return false;
+        }
+        int distance = Math.max(Math.abs(dx), Math.abs(dy));
+        if (distance > range) {
+            return false;
+        }
+        for (int k = 1; k <= distance; k++) {
+            if (!this.isPassable(shooter.getX() + k * Integer.signum(dx),
+                    shooter.getY() + k * Integer.signum(dy))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the nearest enemy a unit could hit by firing in a direction.
+     * @param unit The unit firing.
+     * @param direction The direction it fires in.
+     * @return The nearest living, unshielded enemy along the direction and
+     * within range, or null if there is none.
+     */
+    public EnemyUnit getClosestShootableEnemyInDirection(FriendlyUnit unit,
+                                                        Direction direction) {
+        if (direction == Direction.NOWHERE) {
+            return null;
+        }
+        UnitState shooter = unit.state;
+        int range = shooter.weapon.getRange();
+        for (int k = 1; k <= range; k++) {
+            int x = shooter.position.getX() + k * direction.getDx();
+            int y = shooter.position.getY() + k * direction.getDy();
+            if (!this.isPassable(x, y)) {
+                return null;
+            }
+            for (UnitState other : this.units) {
+                if (other.team != shooter.team && other.isAlive()
+                        && other.shieldedTurnsRemaining == 0
+                        && other.position.getX() == x
+                        && other.position.getY() == y) {
+                    return other.enemyView;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines whether the tile next to a point in a direction could be
+     * walked onto, ignoring any units.
+     * @param p The point to move from.
+     * @param direction The direction to move in.
+     * @return Whether or not the tile is on the map and not a wall.
+     */
+    public boolean canMoveFromPointInDirection(Point p, Direction direction) {
+        return this.isPassable(p.getX() + direction.getDx(),
+                p.getY() + direction.getDy());
+    }
+
+    /**
+     * Looks up the type of a tile. Tiles off the map count as walls.
+     * @param p The tile in question.
+     * @return The type of the tile.
+     */
+    public TileType getTile(Point p) {
+        return this.isPassable(p.getX(), p.getY())
+                ? TileType.FLOOR
+                : TileType.WALL;
+    }
+
+    public boolean isWithinBounds(Point p) {
+        return p.getX() >= 0 && p.getY() >= 0 && p.getX() < this.width
+                && p.getY() < this.height;
+    }
+
+    /**
+     * Looks up the pickup on a tile.
+     * @param p The tile in question.
+     * @return The pickup on the tile, or null if there is none right now.
+     */
+    public Pickup getPickupAtPosition(Point p) {
+        if (!this.isWithinBounds(p)) {
+            return null;
+        }
+        Pickup pickup = this.pickupAt[this.index(p)];
+        return pickup != null && pickup.respawnCountdown == 0 ? pickup : null;
+    }
+
+    public Pickup[] getPickups() {
+        return this.pickups;
+    }
+
+    public ControlPoint[] getControlPoints() {
+        return this.controlPoints;
+    }
+
+    /**
+     * Finds the control point with the shortest path from a tile.
+     * @param p The tile in question.
+     * @return The nearest control point, or null if there are none.
+     */
+    public ControlPoint getNearestControlPoint(Point p) {
+        ControlPoint nearest = null;
+        int shortest = Integer.MAX_VALUE;
+        for (ControlPoint cp : this.controlPoints) {
+            int length = this.getPathLength(p, cp.getPosition());
+            if (length < shortest) {
+                shortest = length;
+                nearest = cp;
+            }
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,58 @@
+package com.orbischallenge.ctz.objects.enums;
+
+import com.orbischallenge.game.engine.*;
+
+public enum Direction {
+    NOWHERE(0, 0),
+    NORTH(0, -1),
+    NORTH_EAST(1, -1),
+    EAST(1, 0),
+    SOUTH_EAST(1, 1),
+    SOUTH(0, 1),
+    SOUTH_WEST(-1, 1),
+    WEST(-1, 0),
+    NORTH_WEST(-1, -1);
+
+    /**
+     * How far moving in this direction shifts a point along each axis.
+     */
+    private final int dx;
+    private final int dy;
+
+    Direction(int dx, int dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * Moves a point one tile in this direction.
+     * @param p The point to move.
+     * @return The point one tile further along this direction.
+     */
+    public Point movePoint(Point p) {
+        return new Point(p.getX() + this.dx, p.getY() + this.dy);
+    }
+
+    /**
+     * Finds the direction of a single step.
+     * @param dx The horizontal step, between -1 and 1.
+     * @param dy The vertical step, between -1 and 1.
+     * @return The direction of the step.
+     */
+    public static Direction fromStep(int dx, int dy) {
+        for (Direction d : values()) {
+            if (d.dx == dx && d.dy == dy) {
+                return d;
+            }
+        }
+        throw new IllegalArgumentException("Not a step: " + dx + ", " + dy);
+    }
+
+    public int getDx() {
+        return this.dx;
+    }
+
+    public int getDy() {
+        return this.dy;
+    }
+}
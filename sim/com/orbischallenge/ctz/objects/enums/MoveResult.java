@@ -0,0 +1,9 @@
+package com.orbischallenge.ctz.objects.enums;
+
+public enum MoveResult {
+    MOVE_COMPLETED,
+    NO_MOVE_ATTEMPTED,
+    BLOCKED_BY_WALL,
+    BLOCKED_BY_ENEMY,
+    BLOCKED_BY_FRIENDLY
+}
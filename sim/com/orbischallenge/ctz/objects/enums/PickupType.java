@@ -0,0 +1,10 @@
+package com.orbischallenge.ctz.objects.enums;
+
+public enum PickupType {
+    SHIELD,
+    REPAIR_KIT,
+    WEAPON_LASER_RIFLE,
+    WEAPON_MINI_BLASTER,
+    WEAPON_SCATTER_GUN,
+    WEAPON_RAIL_GUN
+}
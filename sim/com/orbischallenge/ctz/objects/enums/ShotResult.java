@@ -0,0 +1,10 @@
+package com.orbischallenge.ctz.objects.enums;
+
+public enum ShotResult {
+    CAN_HIT_ENEMY,
+    BLOCKED_BY_WALL,
+    TARGET_OUT_OF_RANGE,
+    TARGET_SHIELDED,
+    TARGET_DEAD,
+    SHOOTER_DEAD
+}
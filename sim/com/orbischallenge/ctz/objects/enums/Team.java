@@ -0,0 +1,19 @@
+package com.orbischallenge.ctz.objects.enums;
+
+public enum Team {
+    BLUE,
+    AMBER,
+    NONE;
+
+    /**
+     * Finds the team this team is fighting.
+     * @return The other team, or NONE for NONE.
+     */
+    public Team opponent() {
+        switch (this) {
+            case BLUE: return AMBER;
+            case AMBER: return BLUE;
+            default: return NONE;
+        }
+    }
+}
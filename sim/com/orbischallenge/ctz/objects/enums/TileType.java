@@ -0,0 +1,6 @@
+package com.orbischallenge.ctz.objects.enums;
+
+public enum TileType {
+    FLOOR,
+    WALL
+}
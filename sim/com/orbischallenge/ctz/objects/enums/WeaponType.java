@@ -0,0 +1,30 @@
+package com.orbischallenge.ctz.objects.enums;
+
+public enum WeaponType {
+    MINI_BLASTER(3, 25),
+    SCATTER_GUN(2, 40),
+    LASER_RIFLE(5, 20),
+    RAIL_GUN(10, 15);
+
+    /**
+     * How many tiles a shot reaches, and how much health it takes off.
+     *
+     * These are stand-ins chosen to keep the trade-off between range and
+     * damage of the official game, not its exact numbers.
+     */
+    private final int range;
+    private final int damage;
+
+    WeaponType(int range, int damage) {
+        this.range = range;
+        this.damage = damage;
+    }
+
+    public int getRange() {
+        return this.range;
+    }
+
+    public int getDamage() {
+        return this.damage;
+    }
+}
@@ -0,0 +1,63 @@
+package com.orbischallenge.game.engine;
+
+public class Point {
+    /**
+     * The coordinates of the point.
+     */
+    private final int x;
+    private final int y;
+
+    /**
+     * Creates a point.
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     */
+    public Point(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * The point (0, 0).
+     * @return A point at the origin.
+     */
+    public static Point origin() {
+        return new Point(0, 0);
+    }
+
+    /**
+     * Adds two points together, coordinate by coordinate.
+     * @param other The point to add to this one.
+     * @return The sum of the two points.
+     */
+    public Point add(Point other) {
+        return new Point(this.x + other.x, this.y + other.y);
+    }
+
+    public int getX() {
+        return this.x;
+    }
+
+    public int getY() {
+        return this.y;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Point)) {
+            return false;
+        }
+        Point p = (Point) other;
+        return this.x == p.x && this.y == p.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.x + this.y;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + this.x + ", " + this.y + ")";
+    }
+}
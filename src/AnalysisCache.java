@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class AnalysisCache {
+    /**
+     * The first four bytes of every cache file, and the version of the
+     * layout below. Files with any other version are rebuilt.
+     */
+    static final int MAGIC = 0x43545a41;
+    static final int VERSION = 1;
+
+    /**
+     * The size of the header of a cache file, in bytes. The header holds, in
+     * order, the magic number, the version, the width and height of the map,
+     * the number of words of walls, the number of distances or -1 if there
+     * is no distance table, the number of rays, the longest ray, and the
+     * CRC-32 of everything else in the file: the header before it, and all
+     * that follows. The walls, distances and rays follow, in that order.
+     */
+    static final int HEADER_BYTES = 40;
+
+    /**
+     * Where the checksum is in the header.
+     */
+    static final int CHECKSUM_OFFSET = 32;
+
+    /**
+     * The folder the cache files are kept in.
+     */
+    final Path directory;
+
+    /**
+     * What the last successful load read: the distance table, or null if the
+     * map was too large for one, the rays, and the longest ray.
+     */
+    short[] distances;
+    short[] rayLengths;
+    int maximumRayLength;
+
+    /**
+     * Creates a cache that keeps its files in the given folder.
+     * @param directory The folder, which is created when first written to.
+     */
+    public AnalysisCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates the cache given by the ai.analysisCache system property: the
+     * folder to keep the files in, or none to turn the cache off. By default
+     * the files are kept in a folder in the system's temporary directory.
+     * @return The cache, or null if it is turned off.
+     */
+    public static AnalysisCache fromProperties() {
+        String directory = System.getProperty("ai.analysisCache",
+                Paths.get(System.getProperty("java.io.tmpdir"),
+                        "ctz-analysis").toString());
+        if (directory.isEmpty() || directory.equals("none")) {
+            return null;
+        }
+        return new AnalysisCache(Paths.get(directory));
+    }
+
+    /**
+     * Hashes the size and walls of a map, so that every map gets its own
+     * file.
+     * @param grid The map.
+     * @return A 64 bit fingerprint of the map.
+     */
+    static long fingerprint(MapGrid grid) {
+        long hash = grid.width * 31L + grid.height;
+        for (long word : grid.walls) {
+            hash = (hash ^ word) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the CRC-32 of a cache file, which covers every byte but the
+     * checksum itself, so that a corrupt header is caught as well.
+     * @param file The whole file.
+     * @return The checksum.
+     */
+    static long checksum(ByteBuffer file) {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = file.duplicate();
+        header.position(0).limit(CHECKSUM_OFFSET);
+        crc.update(header);
+        ByteBuffer payload = file.duplicate();
+        payload.limit(payload.capacity()).position(HEADER_BYTES);
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    /**
+     * Finds the file a map's analysis is kept in.
+     * @param grid The map.
+     * @return The path of the file.
+     */
+    Path fileFor(MapGrid grid) {
+        return this.directory.resolve(String.format("%016x.bin",
+                fingerprint(grid)));
+    }
+
+    /**
+     * Reads the analysis of a map back from its file, by mapping the file
+     * into memory. The file is only trusted if its header matches this
+     * version and map, its walls are exactly the map's, and its checksum is
+     * right, so that a corrupt, outdated or colliding file is never used.
+     * @param grid The map.
+     * @return Whether or not the analysis was read, in which case it is left
+     * in the fields above.
+     */
+    public boolean load(MapGrid grid) {
+        Path file = this.fileFor(grid);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return false;
+            }
+            MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getInt() != grid.width
+                    || buffer.getInt() != grid.height
+                    || buffer.getInt() != grid.walls.length) {
+                return false;
+            }
+            int distanceCount = buffer.getInt();
+            int rayCount = buffer.getInt();
+            int longest = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (rayCount != grid.width * grid.height * 9
+                    || size != HEADER_BYTES + 8L * grid.walls.length
+                    + 2L * Math.max(distanceCount, 0) + 2L * rayCount) {
+                return false;
+            }
+            if (checksum(buffer) != checksum) {
+                return false;
+            }
+            for (long word : grid.walls) {
+                if (buffer.getLong() != word) {
+                    return false;
+                }
+            }
+            short[] table = null;
+            if (distanceCount >= 0) {
+                table = new short[distanceCount];
+                buffer.asShortBuffer().get(table);
+                buffer.position(buffer.position() + 2 * distanceCount);
+            }
+            short[] rays = new short[rayCount];
+            buffer.asShortBuffer().get(rays);
+            this.distances = table;
+            this.rayLengths = rays;
+            this.maximumRayLength = longest;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // Whatever went wrong, the analysis can always be redone.
+            return false;
+        }
+    }
+
+    /**
+     * Writes the analysis of a map to its file, replacing any file that was
+     * there. The file is written under a temporary name and then renamed,
+     * so that another match reading it never sees it half written. Failing
+     * to write is not an error, as the cache is only there to save time.
+     * @param grid The map.
+     * @param distances The distance table, or null if there is none.
+     * @param lineOfSight The ray table.
+     */
+    public void store(MapGrid grid, short[] distances,
+                      LineOfSight lineOfSight) {
+        Path file = this.fileFor(grid);
+        short[] rays = lineOfSight.rayLengths;
+        int distanceCount = distances == null ? -1 : distances.length;
+        long size = HEADER_BYTES + 8L * grid.walls.length
+                + 2L * Math.max(distanceCount, 0) + 2L * rays.length;
+        try {
+            Files.createDirectories(this.directory);
+            Path temporary = Files.createTempFile(this.directory, "analysis",
+                    ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temporary,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    MappedByteBuffer buffer = channel.map(
+                            FileChannel.MapMode.READ_WRITE, 0, size);
+                    buffer.position(HEADER_BYTES);
+                    for (long word : grid.walls) {
+                        buffer.putLong(word);
+                    }
+                    if (distances != null) {
+                        buffer.asShortBuffer().put(distances);
+                        buffer.position(buffer.position()
+                                + 2 * distances.length);
+                    }
+                    buffer.asShortBuffer().put(rays);
+                    buffer.position(0);
+                    buffer.putInt(MAGIC);
+                    buffer.putInt(VERSION);
+                    buffer.putInt(grid.width);
+                    buffer.putInt(grid.height);
+                    buffer.putInt(grid.walls.length);
+                    buffer.putInt(distanceCount);
+                    buffer.putInt(rays.length);
+                    buffer.putInt(lineOfSight.maximumRayLength);
+                    buffer.putLong(checksum(buffer));
+                    buffer.force();
+                }
+                Files.move(temporary, file,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException | RuntimeException e) {
+            // The next match will simply try again.
+        }
+    }
+}
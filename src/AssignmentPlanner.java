@@ -0,0 +1,444 @@
+public class AssignmentPlanner {
+    /**
+     * The cost of giving a unit a tile it can't move to. Large enough that
+     * no assignment using one can beat one that doesn't, as long as any
+     * exists, which it does since every unit may stand still.
+     */
+    static final double FORBIDDEN = 1e12;
+
+    /**
+     * The largest cost magnitude an allowed tile may have. Action values can
+     * be infinite, such as for a tile an enemy stands on, which the matching
+     * can't work with, so costs are clamped to this, well below FORBIDDEN.
+     */
+    static final double LARGEST_COST = 1e9;
+
+    /**
+     * The most rounds of single unit changes made while refining the
+     * assignment for the unity ratio.
+     */
+    static final int MAX_REFINEMENTS = 16;
+
+    /**
+     * The best combination of directions found by the last plan, and its
+     * goodness.
+     */
+    int[] bestDirections;
+    double bestGoodness;
+
+    /**
+     * The number of single unit changes the last plan made while refining,
+     * and the number of tiles the units were matched to.
+     */
+    int refinements;
+    int tileCount;
+
+    /**
+     * The time allowed for this turn, or null to refine until done.
+     */
+    TurnBudget budget;
+
+    /**
+     * Whether or not the last plan stopped refining because of the
+     * deadline.
+     */
+    boolean timedOut;
+
+    /**
+     * Whether or not the last plan gave up on the matching and used the
+     * exhaustive search instead.
+     */
+    boolean fellBack;
+
+    /**
+     * The tile every column of the cost matrix stands for, the column of
+     * every unit moving in every direction, and the living units, which are
+     * the rows. The matrix itself is laid out row by row.
+     */
+    private int[] columnTiles;
+    private int[][] columns;
+    private int[] rows;
+    private double[] costs;
+
+    /**
+     * The potentials of the rows and columns, the row every column is
+     * matched to, and the scratch space of the Hungarian method. Row and
+     * column zero stand for "none", so these are one longer than needed.
+     */
+    private double[] rowPotential;
+    private double[] columnPotential;
+    private int[] matchedRow;
+    private int[] previousColumn;
+    private double[] slack;
+    private boolean[] visited;
+
+    /**
+     * The plan being refined, and its weights.
+     */
+    private int[] chosen;
+    private double[] factors;
+
+    /**
+     * Plans the moves of every unit by solving an assignment problem.
+     *
+     * Leaving out the unity ratio, the goodness of a plan is the sum of the
+     * weighted action values of the units, and the only thing tying the units
+     * together is that no two living units may move onto the same tile. That
+     * is a minimum cost matching of units to tiles, which the Hungarian
+     * method solves in time polynomial in the number of units, rather than
+     * growing ninefold with each one.
+     *
+     * The weights depend on whether the first unit stands still, so the
+     * matching is solved once with it standing still and once with it
+     * moving. The better of the two is then refined for the unity ratio by
+     * moving one unit at a time for as long as that improves the goodness.
+     *
+     * Dead units start out in their best direction, and only the refinement
+     * moves them, so a dead unit that keeps a living one after it off its
+     * best tile may be left there where the exhaustive search would have
+     * moved both. Otherwise, far from enemies, where the ratio doesn't
+     * matter, this finds exactly the plan the exhaustive search would.
+     * @param moves The action values and positions of every unit.
+     */
+    public void plan(JointMoveSearch moves) {
+        int units = moves.units;
+        if (this.bestDirections == null
+                || this.bestDirections.length != units) {
+            this.bestDirections = new int[units];
+            this.chosen = new int[units];
+            this.factors = new double[units];
+            this.rows = new int[units];
+            this.columns = new int[units][moves.directionCount];
+            int size = units * moves.directionCount;
+            this.columnTiles = new int[size];
+            this.costs = new double[units * size];
+            this.rowPotential = new double[units + 1];
+            this.columnPotential = new double[size + 1];
+            this.matchedRow = new int[size + 1];
+            this.previousColumn = new int[size + 1];
+            this.slack = new double[size + 1];
+            this.visited = new boolean[size + 1];
+        }
+        this.bestGoodness = Double.NEGATIVE_INFINITY;
+        this.refinements = 0;
+        this.timedOut = false;
+        this.fellBack = false;
+        if (!moves.prepare()) {
+            java.util.Arrays.fill(this.bestDirections, 0);
+            return;
+        }
+        this.listColumns(moves);
+        // Dead units aren't part of the matching, so they start out in their
+        // best direction, and the living units after them are kept off it.
+        for (int i = 0; i < units; i++) {
+            this.chosen[i] = moves.getOrder(i)[0];
+        }
+        boolean firstMatched = moves.alive[0];
+        for (int still = 0; still < (firstMatched ? 2 : 1); still++) {
+            int d0 = firstMatched
+                    ? (still == 0 ? -1 : moves.nowhere) : this.chosen[0];
+            if (firstMatched && d0 == moves.nowhere
+                    && moves.tiles[0][moves.nowhere] < 0) {
+                continue;
+            }
+            int matched = this.match(moves, d0);
+            if (matched < 0) {
+                this.fallBack(moves);
+                return;
+            }
+            if (matched == 0) {
+                continue;
+            }
+            double goodness = this.getGoodness(moves, this.chosen);
+            if (goodness > this.bestGoodness) {
+                this.bestGoodness = goodness;
+                System.arraycopy(this.chosen, 0, this.bestDirections, 0,
+                        units);
+            }
+        }
+        if (this.bestGoodness == Double.NEGATIVE_INFINITY) {
+            this.fallBack(moves);
+            return;
+        }
+        this.refine(moves);
+    }
+
+    /**
+     * Plans with the exhaustive search instead, for the rare turns the
+     * matching can't handle.
+     * @param moves The moves being planned.
+     */
+    private void fallBack(JointMoveSearch moves) {
+        this.fellBack = true;
+        moves.search();
+        System.arraycopy(moves.bestDirections, 0, this.bestDirections, 0,
+                moves.units);
+        this.bestGoodness = moves.bestGoodness;
+        this.timedOut = moves.timedOut;
+    }
+
+    /**
+     * Numbers the tiles the living units could move to, which become the
+     * columns of the cost matrix.
+     * @param moves The moves being planned.
+     */
+    private void listColumns(JointMoveSearch moves) {
+        int count = 0;
+        int rowCount = 0;
+        for (int i = 0; i < moves.units; i++) {
+            if (!moves.alive[i]) {
+                continue;
+            }
+            this.rows[rowCount++] = i;
+            java.util.Arrays.fill(this.columns[i], -1);
+            for (int k = 0; k < moves.getOrderCount(i); k++) {
+                int d = moves.getOrder(i)[k];
+                int tile = moves.tiles[i][d];
+                int column = 0;
+                while (column < count && this.columnTiles[column] != tile) {
+                    column++;
+                }
+                if (column == count) {
+                    this.columnTiles[count++] = tile;
+                }
+                this.columns[i][d] = column;
+            }
+        }
+        this.tileCount = count;
+        for (int r = rowCount; r < moves.units; r++) {
+            this.rows[r] = -1;
+        }
+    }
+
+    /**
+     * Matches the living units to tiles, maximizing the sum of their
+     * weighted action values.
+     * @param moves The moves being planned.
+     * @param d0 The direction the first unit must take, or -1 if it may
+     * take any direction but standing still.
+     * @return 1 if every living unit was given a tile, 0 if some couldn't
+     * be, or -1 if the matching couldn't be solved at all.
+     */
+    private int match(JointMoveSearch moves, int d0) {
+        int rowCount = 0;
+        while (rowCount < moves.units && this.rows[rowCount] >= 0) {
+            rowCount++;
+        }
+        int columnCount = this.tileCount;
+        if (rowCount > columnCount) {
+            return -1;
+        }
+        for (int i = 0; i < moves.units; i++) {
+            // Any direction of the first unit other than standing still
+            // weighs every unit the same.
+            this.factors[i] = d0 < 0 ? 1 : moves.getFactor(i, d0);
+        }
+        java.util.Arrays.fill(this.costs, 0, rowCount * columnCount,
+                FORBIDDEN);
+        for (int r = 0; r < rowCount; r++) {
+            int i = this.rows[r];
+            for (int k = 0; k < moves.getOrderCount(i); k++) {
+                int d = moves.getOrder(i)[k];
+                if (i == 0 && (d0 < 0 ? d == moves.nowhere : d != d0)
+                        || this.collides(moves, this.chosen, i, d, false)) {
+                    continue;
+                }
+                double cost = -moves.actionValue[i][d] * this.factors[i];
+                if (!(cost >= -LARGEST_COST)) {
+                    // Also catches NaN, which is never the better choice.
+                    cost = cost < 0 ? -LARGEST_COST : LARGEST_COST;
+                } else if (cost > LARGEST_COST) {
+                    cost = LARGEST_COST;
+                }
+                this.costs[r * columnCount + this.columns[i][d]] = cost;
+            }
+        }
+        if (!this.solve(rowCount, columnCount)) {
+            return -1;
+        }
+        for (int c = 1; c <= columnCount; c++) {
+            int r = this.matchedRow[c];
+            if (r == 0) {
+                continue;
+            }
+            if (this.costs[(r - 1) * columnCount + c - 1] >= FORBIDDEN) {
+                return 0;
+            }
+            int i = this.rows[r - 1];
+            for (int d = 0; d < moves.directionCount; d++) {
+                if (this.columns[i][d] == c - 1) {
+                    this.chosen[i] = d;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Finds the minimum cost matching of every row to a different column
+     * with the Hungarian method, in time proportional to the square of the
+     * rows times the columns. The result is left in matchedRow.
+     *
+     * Every row is added to the matching after at most one step per column,
+     * so taking more steps than that means the costs were unusable.
+     * @param rowCount The number of rows, at most the number of columns.
+     * @param columnCount The number of columns.
+     * @return Whether or not a matching was found.
+     */
+    private boolean solve(int rowCount, int columnCount) {
+        java.util.Arrays.fill(this.rowPotential, 0, rowCount + 1, 0);
+        java.util.Arrays.fill(this.columnPotential, 0, columnCount + 1, 0);
+        java.util.Arrays.fill(this.matchedRow, 0, columnCount + 1, 0);
+        for (int r = 1; r <= rowCount; r++) {
+            // Grow a tree of alternating paths from the new row until it
+            // reaches a free column, then flip the path.
+            this.matchedRow[0] = r;
+            int column = 0;
+            java.util.Arrays.fill(this.slack, 0, columnCount + 1,
+                    Double.POSITIVE_INFINITY);
+            java.util.Arrays.fill(this.visited, 0, columnCount + 1, false);
+            int steps = 0;
+            do {
+                if (++steps > columnCount) {
+                    return false;
+                }
+                this.visited[column] = true;
+                int row = this.matchedRow[column];
+                double delta = Double.POSITIVE_INFINITY;
+                int next = 0;
+                for (int c = 1; c <= columnCount; c++) {
+                    if (this.visited[c]) {
+                        continue;
+                    }
+                    double reduced = this.costs[(row - 1) * columnCount + c - 1]
+                            - this.rowPotential[row] - this.columnPotential[c];
+                    if (reduced < this.slack[c]) {
+                        this.slack[c] = reduced;
+                        this.previousColumn[c] = column;
+                    }
+                    if (this.slack[c] < delta) {
+                        delta = this.slack[c];
+                        next = c;
+                    }
+                }
+                for (int c = 0; c <= columnCount; c++) {
+                    if (this.visited[c]) {
+                        this.rowPotential[this.matchedRow[c]] += delta;
+                        this.columnPotential[c] -= delta;
+                    } else {
+                        this.slack[c] -= delta;
+                    }
+                }
+                if (next == 0) {
+                    return false;
+                }
+                column = next;
+            } while (this.matchedRow[column] != 0);
+            do {
+                int previous = this.previousColumn[column];
+                this.matchedRow[column] = this.matchedRow[previous];
+                column = previous;
+            } while (column != 0);
+        }
+        return true;
+    }
+
+    /**
+     * Improves the best plan for the unity ratio, by repeatedly making the
+     * single change of one unit's direction that improves the goodness the
+     * most, until no change does.
+     * @param moves The moves being planned.
+     */
+    private void refine(JointMoveSearch moves) {
+        int[] plan = this.chosen;
+        System.arraycopy(this.bestDirections, 0, plan, 0, moves.units);
+        for (int round = 0; round < MAX_REFINEMENTS; round++) {
+            if (this.budget != null && this.budget.isExpired()) {
+                this.timedOut = true;
+                return;
+            }
+            int bestUnit = -1;
+            int bestDirection = -1;
+            for (int i = 0; i < moves.units; i++) {
+                int current = plan[i];
+                for (int k = 0; k < moves.getOrderCount(i); k++) {
+                    int d = moves.getOrder(i)[k];
+                    if (d == current || this.collides(moves, plan, i, d, true)) {
+                        continue;
+                    }
+                    plan[i] = d;
+                    double goodness = this.getGoodness(moves, plan);
+                    if (goodness > this.bestGoodness) {
+                        this.bestGoodness = goodness;
+                        bestUnit = i;
+                        bestDirection = d;
+                    }
+                }
+                plan[i] = current;
+            }
+            if (bestUnit < 0) {
+                return;
+            }
+            plan[bestUnit] = bestDirection;
+            this.bestDirections[bestUnit] = bestDirection;
+            this.refinements++;
+        }
+    }
+
+    /**
+     * Determines whether a unit would share a tile with another unit in a
+     * way the exhaustive search forbids. The search keeps every living unit
+     * off the tiles of all units before it, dead or alive, so two units may
+     * only share a tile if the later of them is dead.
+     * @param moves The moves being planned.
+     * @param plan The directions of every unit.
+     * @param unit The unit that is moving.
+     * @param d The direction it would move in.
+     * @param living Whether to check pairs of living units as well, which
+     * the matching keeps apart by itself.
+     * @return Whether or not the move collides.
+     */
+    private boolean collides(JointMoveSearch moves, int[] plan, int unit,
+                             int d, boolean living) {
+        int tile = moves.tiles[unit][d];
+        for (int j = 0; j < moves.units; j++) {
+            if (j == unit || moves.tiles[j][plan[j]] != tile
+                    || !moves.alive[Math.max(j, unit)]) {
+                continue;
+            }
+            if (living || !moves.alive[j] || !moves.alive[unit]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the goodness of a complete plan exactly as the exhaustive
+     * search does.
+     * @param moves The moves being planned.
+     * @param plan The directions of every unit.
+     * @return The total weighted action value, scaled by the unity ratio.
+     */
+    private double getGoodness(JointMoveSearch moves, int[] plan) {
+        double value = 0;
+        int unity = 0;
+        for (int i = 0; i < moves.units; i++) {
+            value += moves.actionValue[i][plan[i]]
+                    * moves.getFactor(i, plan[0]);
+            if (!moves.alive[i]) {
+                continue;
+            }
+            for (int j = 0; j < i; j++) {
+                if (moves.alive[j]) {
+                    unity += moves.getMoveDistance(i, plan[i], j, plan[j]);
+                }
+            }
+        }
+        if (moves.getAliveCount() < 2) {
+            unity = 1;
+        }
+        return value * Math.pow(1d * moves.currentUnity / unity,
+                moves.exponent);
+    }
+}
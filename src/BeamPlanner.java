@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public class BeamPlanner {
+    /**
+     * The number of partial plans kept after placing each unit.
+     */
+    int width;
+
+    /**
+     * The rules every plan must obey, and the terms that scale its value.
+     */
+    List<MoveConstraint> constraints;
+
+    /**
+     * The best combination of directions found by the last plan, and its
+     * goodness. If no combination has positive goodness, the directions are
+     * all zero, like the exhaustive search.
+     */
+    int[] bestDirections;
+    double bestGoodness;
+
+    /**
+     * The number of partial plans the last plan scored.
+     */
+    long statesExpanded;
+
+    /**
+     * The time allowed for this turn, or null to plan at full width.
+     *
+     * Once the deadline passes, only the single best partial plan is kept
+     * for the remaining units, so a complete plan is still produced quickly.
+     */
+    TurnBudget budget;
+
+    /**
+     * Whether or not the last plan had to narrow the beam to meet the
+     * deadline.
+     */
+    boolean timedOut;
+
+    /**
+     * Creates a beam planner with the given width and no constraints.
+     * @param width The number of partial plans to keep at every step.
+     */
+    public BeamPlanner(int width) {
+        this.width = width;
+        this.constraints = new ArrayList<>();
+    }
+
+    /**
+     * Plans the moves of every unit, one unit at a time.
+     *
+     * Every kept partial plan is extended by each direction the next unit may
+     * move in, and only the best few of those are kept for the next unit. The
+     * work done is proportional to the number of units times the width, so it
+     * stays manageable for teams far too large to search exhaustively, at the
+     * cost of possibly missing the best plan.
+     * @param moves The action values and positions of every unit.
+     */
+    public void plan(JointMoveSearch moves) {
+        this.bestDirections = new int[moves.units];
+        this.bestGoodness = Double.MIN_VALUE;
+        this.statesExpanded = 0;
+        this.timedOut = false;
+        if (!moves.prepare()) {
+            return;
+        }
+        List<int[]> beam = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        beam.add(new int[moves.units]);
+        values.add(0d);
+        for (int unit = 0; unit < moves.units; unit++) {
+            final List<int[]> nextBeam = new ArrayList<>();
+            final List<Double> nextValues = new ArrayList<>();
+            final List<Double> nextScores = new ArrayList<>();
+            for (int s = 0; s < beam.size(); s++) {
+                int[] order = moves.getOrder(unit);
+                for (int k = 0; k < moves.getOrderCount(unit); k++) {
+                    int d = order[k];
+                    int[] chosen = beam.get(s).clone();
+                    chosen[unit] = d;
+                    if (!this.allows(moves, chosen, unit, d)) {
+                        continue;
+                    }
+                    double value = values.get(s) + moves.actionValue[unit][d]
+                            * moves.getFactor(unit, chosen[0]);
+                    nextBeam.add(chosen);
+                    nextValues.add(value);
+                    nextScores.add(value
+                            * this.getMultiplier(moves, chosen, unit + 1));
+                    this.statesExpanded++;
+                }
+            }
+            // Keep the best partial plans. Ties go to the plan that comes
+            // first in order, so that the result doesn't depend on the order
+            // plans were generated in.
+            Integer[] ranks = new Integer[nextBeam.size()];
+            for (int k = 0; k < ranks.length; k++) {
+                ranks[k] = k;
+            }
+            java.util.Arrays.sort(ranks, (a, b) -> {
+                int byScore = Double.compare(nextScores.get(b),
+                        nextScores.get(a));
+                return byScore != 0 ? byScore
+                        : compareOrder(nextBeam.get(a), nextBeam.get(b));
+            });
+            if (this.budget != null && this.budget.isExpired()) {
+                this.timedOut = true;
+            }
+            int keep = this.timedOut ? 1 : this.width;
+            beam = new ArrayList<>();
+            values = new ArrayList<>();
+            for (int k = 0; k < ranks.length && k < keep; k++) {
+                beam.add(nextBeam.get(ranks[k]));
+                values.add(nextValues.get(ranks[k]));
+            }
+            // Once every unit is placed, the scores are exact.
+            if (unit == moves.units - 1 && ranks.length > 0
+                    && nextScores.get(ranks[0]) > this.bestGoodness) {
+                this.bestGoodness = nextScores.get(ranks[0]);
+                this.bestDirections = nextBeam.get(ranks[0]);
+            }
+        }
+    }
+
+    /**
+     * Determines whether every constraint allows a unit to move in a
+     * direction.
+     * @param moves The moves being planned.
+     * @param chosen The directions of the units so far.
+     * @param unit The unit that is moving.
+     * @param direction The direction it would move in.
+     * @return Whether or not the move is allowed.
+     */
+    private boolean allows(JointMoveSearch moves, int[] chosen, int unit,
+                           int direction) {
+        for (MoveConstraint constraint : this.constraints) {
+            if (!constraint.allows(moves, chosen, unit, direction)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the product of the multipliers of every constraint.
+     * @param moves The moves being planned.
+     * @param chosen The directions of the units so far.
+     * @param count The number of units placed so far.
+     * @return The factor to scale the total action value by.
+     */
+    private double getMultiplier(JointMoveSearch moves, int[] chosen,
+                                 int count) {
+        double multiplier = 1;
+        for (MoveConstraint constraint : this.constraints) {
+            multiplier *= constraint.getMultiplier(moves, chosen, count);
+        }
+        return multiplier;
+    }
+
+    /**
+     * Compares two plans by the order they would be listed in, comparing the
+     * direction of the first unit first.
+     * @param a The first plan.
+     * @param b The second plan.
+     * @return A negative number if the first plan comes first, a positive
+     * number if it comes second, and zero if they are the same.
+     */
+    private static int compareOrder(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,26 @@
+public class CollisionConstraint implements MoveConstraint {
+    /**
+     * Forbids a living unit from moving onto the tile another unit before it
+     * is moving onto.
+     */
+    @Override
+    public boolean allows(JointMoveSearch moves, int[] chosen, int unit,
+                          int direction) {
+        if (!moves.alive[unit]) {
+            return true;
+        }
+        int tile = moves.tiles[unit][direction];
+        for (int j = 0; j < unit; j++) {
+            if (tile == moves.tiles[j][chosen[j]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double getMultiplier(JointMoveSearch moves, int[] chosen,
+                                int count) {
+        return 1;
+    }
+}
@@ -0,0 +1,172 @@
+import com.orbischallenge.ctz.objects.enums.Direction;
+import com.orbischallenge.game.engine.*;
+
+public class DistanceField {
+    /**
+     * The distance given to tiles that can't reach any source.
+     */
+    static final int UNREACHED = Integer.MAX_VALUE;
+
+    /**
+     * All of the directions, in the order the game lists them, and how far
+     * moving in each shifts a unit along either axis.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int[] DIRECTION_X = new int[DIRECTIONS.length];
+    private static final int[] DIRECTION_Y = new int[DIRECTIONS.length];
+
+    static {
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            Point step = DIRECTIONS[d].movePoint(Point.origin());
+            DIRECTION_X[d] = step.getX();
+            DIRECTION_Y[d] = step.getY();
+        }
+    }
+
+    /**
+     * The width and height of the map.
+     */
+    final int width;
+    final int height;
+
+    /**
+     * The map the distances are measured on.
+     */
+    final MapGrid grid;
+
+    /**
+     * The length of the shortest path from each tile to the nearest source,
+     * indexed by x * height + y.
+     */
+    final int[] distances;
+
+    /**
+     * The direction to step in from each tile to get one step closer to the
+     * nearest source, as an index into Direction.values(), or -1 if there is
+     * no such step. Of several such steps, the first in that order is kept,
+     * which is the one the game's own path finding takes.
+     */
+    final byte[] steps;
+
+    /**
+     * The tiles waiting to be visited by the breadth first search, and the
+     * number of tiles that have been added to it.
+     */
+    private final int[] queue;
+    private int queued;
+
+    /**
+     * Creates an empty field for the given map.
+     * @param grid The map.
+     */
+    public DistanceField(MapGrid grid) {
+        this.grid = grid;
+        this.width = grid.width;
+        this.height = grid.height;
+        int area = this.width * this.height;
+        this.distances = new int[area];
+        this.steps = new byte[area];
+        this.queue = new int[area];
+        this.clear();
+    }
+
+    /**
+     * Removes every source, leaving every tile unreached.
+     */
+    public void clear() {
+        java.util.Arrays.fill(this.distances, UNREACHED);
+        java.util.Arrays.fill(this.steps, (byte) -1);
+        this.queued = 0;
+    }
+
+    /**
+     * Adds a tile to measure distances from. Walls, tiles off the map and
+     * tiles that are already sources are ignored.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     */
+    public void addSource(int x, int y) {
+        int tile = this.index(x, y);
+        if (tile >= 0 && this.distances[tile] != 0) {
+            this.distances[tile] = 0;
+            this.queue[this.queued++] = tile;
+        }
+    }
+
+    /**
+     * Measures the distance from every tile to the nearest source with a
+     * breadth first search started from all of them at once, then works out
+     * the step each tile should take towards it. Units may step in any of
+     * the eight directions.
+     */
+    public void spread() {
+        for (int head = 0; head < this.queued; head++) {
+            int current = this.queue[head];
+            int x = current / this.height;
+            int y = current % this.height;
+            int distance = this.distances[current] + 1;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int next = this.index(x + dx, y + dy);
+                    if (next >= 0 && this.distances[next] == UNREACHED) {
+                        this.distances[next] = distance;
+                        this.queue[this.queued++] = next;
+                    }
+                }
+            }
+        }
+        for (int k = 0; k < this.queued; k++) {
+            int tile = this.queue[k];
+            int x = tile / this.height;
+            int y = tile % this.height;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int next = this.index(x + DIRECTION_X[d], y + DIRECTION_Y[d]);
+                if (next >= 0
+                        && this.distances[next] == this.distances[tile] - 1) {
+                    this.steps[tile] = (byte) d;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up the length of the shortest path from a tile to the nearest
+     * source.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The length of the path, or UNREACHED if there is none.
+     */
+    public int getDistance(int x, int y) {
+        int tile = this.index(x, y);
+        return tile < 0 ? UNREACHED : this.distances[tile];
+    }
+
+    /**
+     * Looks up the direction to step in from a tile to get one step closer
+     * to the nearest source.
+     * @param p The tile in question.
+     * @return The direction, NOWHERE if the tile is a source, or null if it
+     * can't reach any.
+     */
+    public Direction getDirection(Point p) {
+        int tile = this.index(p.getX(), p.getY());
+        if (tile < 0 || this.distances[tile] == UNREACHED) {
+            return null;
+        }
+        if (this.steps[tile] < 0) {
+            return Direction.NOWHERE;
+        }
+        return DIRECTIONS[this.steps[tile]];
+    }
+
+    /**
+     * Finds where a tile is stored in the arrays above.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The index of the tile, or -1 if it is a wall or off the map.
+     */
+    private int index(int x, int y) {
+        return this.grid.index(x, y);
+    }
+}
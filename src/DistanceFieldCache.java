@@ -0,0 +1,78 @@
+public class DistanceFieldCache {
+    /**
+     * The map every field is built for.
+     */
+    final MapGrid grid;
+
+    /**
+     * The fields built so far, the tile each measures distances from, and the
+     * last turn each was asked for in. A field that was asked for in neither
+     * this turn nor the last belongs to a pickup that was taken, and may be
+     * overwritten. Fields from last turn are kept, as they will most likely
+     * be asked for again before the turn is over.
+     */
+    private DistanceField[] fields = new DistanceField[0];
+    private int[] sources = new int[0];
+    private int[] lastUsed = new int[0];
+
+    /**
+     * The number of fields built so far, and the number of the current turn.
+     */
+    private int count;
+    private int turn;
+
+    /**
+     * Creates an empty cache for the given map.
+     * @param grid The map.
+     */
+    public DistanceFieldCache(MapGrid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Starts a new turn, which lets the fields that weren't asked for last
+     * turn be overwritten.
+     */
+    public void beginTurn() {
+        this.turn++;
+    }
+
+    /**
+     * Finds the field of distances to a tile, building it if it isn't
+     * cached.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The distance field of the tile. It stays valid until the turn
+     * after next begins.
+     */
+    public DistanceField get(int x, int y) {
+        int tile = x * this.grid.height + y;
+        int free = -1;
+        for (int k = 0; k < this.count; k++) {
+            if (this.sources[k] == tile) {
+                this.lastUsed[k] = this.turn;
+                return this.fields[k];
+            }
+            if (this.lastUsed[k] < this.turn - 1 && free < 0) {
+                free = k;
+            }
+        }
+        if (free < 0) {
+            free = this.count++;
+            if (free == this.fields.length) {
+                int size = Math.max(8, 2 * free);
+                this.fields = java.util.Arrays.copyOf(this.fields, size);
+                this.sources = java.util.Arrays.copyOf(this.sources, size);
+                this.lastUsed = java.util.Arrays.copyOf(this.lastUsed, size);
+            }
+            this.fields[free] = new DistanceField(this.grid);
+        }
+        DistanceField field = this.fields[free];
+        field.clear();
+        field.addSource(x, y);
+        field.spread();
+        this.sources[free] = tile;
+        this.lastUsed[free] = this.turn;
+        return field;
+    }
+}
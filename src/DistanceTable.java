@@ -0,0 +1,271 @@
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.*;
+
+public class DistanceTable {
+    /**
+     * The value stored for pairs of tiles that cannot reach each other.
+     */
+    static final short UNREACHABLE = Short.MAX_VALUE;
+
+    /**
+     * The most passable tiles a map may have for the table to be built. The
+     * table grows with the square of the number of tiles, so at this size it
+     * already takes 16 MB and about a second to build, which is why it is
+     * built over several turns. Larger maps leave every lookup to the world,
+     * and callers that need many lookups from a few fixed tiles should use a
+     * DistanceField instead.
+     */
+    static final int MAX_TABLE_TILES = 4096;
+
+    /**
+     * The width and height of the map this table was built for.
+     */
+    final int width;
+    final int height;
+
+    /**
+     * The map, which gives every passable tile an ID from 0 to tileCount - 1.
+     * Walls never take part in a path, so they are left out of the table
+     * entirely.
+     */
+    final MapGrid grid;
+
+    /**
+     * The number of passable tiles on the map.
+     */
+    final int tileCount;
+
+    /**
+     * The path lengths between every pair of passable tiles, or null if the
+     * map has more than MAX_TABLE_TILES of them.
+     *
+     * Path lengths are symmetric, so only the lower triangle is stored: the
+     * distance between tiles i >= j lives at index i * (i + 1) / 2 + j.
+     * Shorts are used since no map is anywhere near long enough to need more,
+     * and it halves the memory needed compared to ints.
+     */
+    final short[] distances;
+
+    /**
+     * The number of rows of the table built so far.
+     *
+     * Rows are built in order, and the ones not built yet hold UNREACHABLE,
+     * so lookups that need them are left to the world like any other pair
+     * the table has no answer for.
+     */
+    private int builtRows;
+
+    /**
+     * The scratch space of the breadth first search, only kept until the
+     * table is complete.
+     */
+    private int[] queue;
+    private int[] steps;
+
+    /**
+     * Creates the distance table for the given map, with none of its rows
+     * built yet, unless there are more than MAX_TABLE_TILES passable tiles,
+     * in which case there is no table at all.
+     * @param grid The map.
+     */
+    public DistanceTable(MapGrid grid) {
+        this.grid = grid;
+        this.width = grid.width;
+        this.height = grid.height;
+        int count = grid.tileCount;
+        this.tileCount = count;
+        if (count > MAX_TABLE_TILES) {
+            this.distances = null;
+            return;
+        }
+        this.distances = new short[triangle(count)];
+        java.util.Arrays.fill(this.distances, UNREACHABLE);
+        this.queue = new int[count];
+        this.steps = new int[count];
+    }
+
+    /**
+     * Builds more rows of the table by running a breadth first search from
+     * one passable tile after another, until the table is complete or the
+     * turn has used the given share of its budget. At least one row is built
+     * every time, so the table is always finished eventually.
+     * @param budget The time allowed for this turn, or null to build every
+     * row at once.
+     * @param share The share of the turn's budget after which to stop.
+     * @return Whether or not the table is complete.
+     */
+    public boolean build(TurnBudget budget, double share) {
+        if (this.isComplete()) {
+            return true;
+        }
+        int count = this.tileCount;
+        int[] xs = this.grid.tileX;
+        int[] ys = this.grid.tileY;
+        int[] queue = this.queue;
+        int[] steps = this.steps;
+        long until = budget == null ? 0 : (long) (budget.budgetNanos * share);
+        // Search outwards from every tile. Units may step in any of the eight
+        // directions, so every surrounding tile is one step away. Only the
+        // tiles with a smaller ID are recorded, the rest are filled in when
+        // the search starts from them instead.
+        int first = this.builtRows;
+        for (int source = first; source < count; source++) {
+            if (source > first && until > 0
+                    && budget.getElapsedNanos() >= until) {
+                break;
+            }
+            java.util.Arrays.fill(steps, -1);
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = source;
+            steps[source] = 0;
+            while (head < tail) {
+                int current = queue[head++];
+                if (current <= source) {
+                    this.distances[triangle(source) + current] =
+                            (short) Math.min(steps[current], UNREACHABLE - 1);
+                }
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        int next = this.getTileId(xs[current] + dx,
+                                ys[current] + dy);
+                        if (next >= 0 && steps[next] < 0) {
+                            steps[next] = steps[current] + 1;
+                            queue[tail++] = next;
+                        }
+                    }
+                }
+            }
+            this.builtRows = source + 1;
+        }
+        if (this.isComplete()) {
+            this.queue = null;
+            this.steps = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether every row of the table has been built, which is
+     * always the case when the map is too large for a table.
+     * @return Whether or not the table is complete.
+     */
+    public boolean isComplete() {
+        return this.distances == null || this.builtRows == this.tileCount;
+    }
+
+    /**
+     * Creates the distance table for the given map from distances worked out
+     * before, such as ones read back from an AnalysisCache.
+     * @param grid The map.
+     * @param distances The distances, laid out as in the field of the same
+     * name, or null if the map is too large for the table.
+     */
+    DistanceTable(MapGrid grid, short[] distances) {
+        this.grid = grid;
+        this.width = grid.width;
+        this.height = grid.height;
+        this.tileCount = grid.tileCount;
+        this.distances = distances;
+        this.builtRows = grid.tileCount;
+    }
+
+    /**
+     * The number of entries in the lower triangle of an n by n table, which is
+     * also the index of the first entry in row n.
+     * @param n The number of rows.
+     * @return The number of entries in those rows.
+     */
+    private static int triangle(int n) {
+        return (int) ((long) n * (n + 1) / 2);
+    }
+
+    /**
+     * Finds the ID of the tile at the given coordinates.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The ID of the tile, or -1 if it is a wall or off the map.
+     */
+    public int getTileId(int x, int y) {
+        return this.grid.getTileId(x, y);
+    }
+
+    /**
+     * Finds the ID of the tile at the given point.
+     * @param p The point in question.
+     * @return The ID of the tile, or -1 if it is a wall or off the map.
+     */
+    public int getTileId(Point p) {
+        return this.getTileId(p.getX(), p.getY());
+    }
+
+    /**
+     * Looks up the path length between two passable tiles. The table must
+     * have been built, which callers can check with isComplete.
+     * @param a The ID of the first tile.
+     * @param b The ID of the second tile.
+     * @return The length of the shortest path between the two tiles, or
+     * UNREACHABLE if there is no such path.
+     */
+    public int getDistance(int a, int b) {
+        return a >= b
+                ? this.distances[triangle(a) + b]
+                : this.distances[triangle(b) + a];
+    }
+
+    /**
+     * Looks up the length of the shortest path between two points.
+     * @param world The state of the world, used if the table has no answer.
+     * @param a The start of the path.
+     * @param b The end of the path.
+     * @return The length of the shortest path between the two points.
+     */
+    public int getPathLength(World world, Point a, Point b) {
+        return this.getPathLength(world, this.getTileId(a), this.getTileId(b),
+                a, b);
+    }
+
+    /**
+     * Looks up the length of the shortest path between two passable tiles.
+     * Unlike the method above, this never creates a point unless the table
+     * has no answer.
+     * @param world The state of the world, used if the table has no answer.
+     * @param a The ID of the first tile.
+     * @param b The ID of the second tile.
+     * @return The length of the shortest path between the two tiles.
+     */
+    public int getPathLength(World world, int a, int b) {
+        return this.getPathLength(world, a, b, null, null);
+    }
+
+    /**
+     * Looks up the length of the shortest path between two tiles, given both
+     * as IDs and, if at hand, as points.
+     * @param world The state of the world, used if the table has no answer.
+     * @param idA The ID of the first tile, or -1 if it has none.
+     * @param idB The ID of the second tile, or -1 if it has none.
+     * @param a The first tile, or null to create it from its ID if needed.
+     * @param b The second tile, or null to create it from its ID if needed.
+     * @return The length of the shortest path between the two tiles.
+     */
+    private int getPathLength(World world, int idA, int idB, Point a,
+                              Point b) {
+        if (idA >= 0 && idB >= 0 && this.distances != null) {
+            int len = this.getDistance(idA, idB);
+            if (len != UNREACHABLE) {
+                return len;
+            }
+        }
+        // Points that are not in the table, such as walls or tiles that can't
+        // reach each other, are rare enough to leave to the world, as is
+        // every lookup on maps too large for the table.
+        if (a == null) {
+            a = new Point(this.grid.tileX[idA], this.grid.tileY[idA]);
+        }
+        if (b == null) {
+            b = new Point(this.grid.tileX[idB], this.grid.tileY[idB]);
+        }
+        return world.getPathLength(a, b);
+    }
+}
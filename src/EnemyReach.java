@@ -0,0 +1,190 @@
+import com.orbischallenge.ctz.objects.*;
+
+public class EnemyReach {
+    /**
+     * The map, whose walls no enemy can stand on.
+     */
+    final MapGrid grid;
+
+    /**
+     * How far one can see from every tile.
+     */
+    final LineOfSight lineOfSight;
+
+    /**
+     * The tiles every enemy could stand on after its next move, and the tiles
+     * it could shoot from any of them, one bit per tile, laid out like the
+     * walls of the map. Rebuilt every turn; dead enemies reach nothing.
+     */
+    long[][] reachable = new long[0][];
+    long[][] shootable = new long[0][];
+
+    /**
+     * The damage of every enemy's weapon.
+     */
+    int[] damage = new int[0];
+
+    /**
+     * Creates the reach of the enemies on the given map.
+     * @param grid The map.
+     * @param lineOfSight How far one can see from every tile of the map.
+     */
+    public EnemyReach(MapGrid grid, LineOfSight lineOfSight) {
+        this.grid = grid;
+        this.lineOfSight = lineOfSight;
+    }
+
+    /**
+     * Recomputes where every enemy could be after its next move, and what it
+     * could shoot from there.
+     *
+     * An enemy moves at most one tile, so the tiles it can reach are three
+     * runs of three bits, one in each of the columns around it, less the
+     * walls. Its rays along a column are runs of bits as well, and are set a
+     * word at a time. Only the rays across columns are set one bit at a time.
+     * @param enemyUnits The array of enemy units.
+     */
+    public void update(EnemyUnit[] enemyUnits) {
+        int words = this.grid.walls.length;
+        if (this.reachable.length != enemyUnits.length) {
+            this.reachable = new long[enemyUnits.length][words];
+            this.shootable = new long[enemyUnits.length][words];
+            this.damage = new int[enemyUnits.length];
+        }
+        int height = this.grid.height;
+        for (int e = 0; e < enemyUnits.length; e++) {
+            long[] reach = this.reachable[e];
+            long[] shots = this.shootable[e];
+            java.util.Arrays.fill(reach, 0);
+            java.util.Arrays.fill(shots, 0);
+            if (enemyUnits[e].getHealth() <= 0) {
+                continue;
+            }
+            this.damage[e] = enemyUnits[e].getCurrentWeapon().getDamage();
+            int range = enemyUnits[e].getCurrentWeapon().getRange();
+            int x = enemyUnits[e].getPosition().getX();
+            int y = enemyUnits[e].getPosition().getY();
+            int low = Math.max(0, y - 1);
+            int high = Math.min(height - 1, y + 1);
+            int first = Integer.MAX_VALUE;
+            int last = -1;
+            for (int cx = Math.max(0, x - 1);
+                 cx <= Math.min(this.grid.width - 1, x + 1); cx++) {
+                setRun(reach, cx * height + low, high - low + 1);
+                first = Math.min(first, cx * height + low);
+                last = cx * height + high;
+            }
+            for (int w = first >> 6; w <= last >> 6; w++) {
+                reach[w] &= ~this.grid.walls[w];
+            }
+            // Shoot along every ray from every tile the enemy can reach.
+            for (int w = first >> 6; w <= last >> 6; w++) {
+                for (long bits = reach[w]; bits != 0; bits &= bits - 1) {
+                    int tile = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    this.addRays(shots, tile / height, tile % height, range);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks every tile a shooter could hit from a tile, which excludes the
+     * tile itself.
+     * @param shots The tiles hit so far.
+     * @param x The x coordinate of the shooter.
+     * @param y The y coordinate of the shooter.
+     * @param range The range of the shooter's gun.
+     */
+    private void addRays(long[] shots, int x, int y, int range) {
+        int height = this.grid.height;
+        int tile = x * height + y;
+        int up = Math.min(range, this.lineOfSight.getRayLength(x, y, 0, 1));
+        setRun(shots, tile + 1, up);
+        int down = Math.min(range, this.lineOfSight.getRayLength(x, y, 0, -1));
+        setRun(shots, tile - down, down);
+        for (int dx = -1; dx <= 1; dx += 2) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int length = Math.min(range,
+                        this.lineOfSight.getRayLength(x, y, dx, dy));
+                int step = dx * height + dy;
+                for (int k = 1, index = tile + step; k <= length;
+                     k++, index += step) {
+                    shots[index >> 6] |= 1L << index;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets a run of consecutive bits.
+     * @param bits The bits to set them in.
+     * @param from The first bit of the run.
+     * @param length The number of bits in the run.
+     */
+    private static void setRun(long[] bits, int from, int length) {
+        while (length > 0) {
+            int offset = from & 63;
+            int count = Math.min(length, 64 - offset);
+            bits[from >> 6] |= (count == 64 ? -1L : (1L << count) - 1)
+                    << offset;
+            from += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Determines whether a bit is set.
+     * @param bits The bits in question.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return Whether or not the tile's bit is set, which it never is for
+     * tiles off the map.
+     */
+    private boolean isSet(long[] bits, int x, int y) {
+        if (!this.grid.contains(x, y)) {
+            return false;
+        }
+        int tile = x * this.grid.height + y;
+        return (bits[tile >> 6] & 1L << tile) != 0;
+    }
+
+    /**
+     * Determines whether an enemy could stand on a tile after its next move.
+     * @param e The index of the enemy.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return Whether or not the enemy can reach the tile.
+     */
+    public boolean canReach(int e, int x, int y) {
+        return this.isSet(this.reachable[e], x, y);
+    }
+
+    /**
+     * Determines whether an enemy could shoot a tile after its next move.
+     * @param e The index of the enemy.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return Whether or not the enemy can move to where it can shoot the
+     * tile.
+     */
+    public boolean canShoot(int e, int x, int y) {
+        return this.isSet(this.shootable[e], x, y);
+    }
+
+    /**
+     * Sums the damage of every enemy that could shoot a tile after its next
+     * move.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The total damage the enemies could deal to the tile next turn.
+     */
+    public int getNextTurnDamage(int x, int y) {
+        int total = 0;
+        for (int e = 0; e < this.shootable.length; e++) {
+            if (this.isSet(this.shootable[e], x, y)) {
+                total += this.damage[e];
+            }
+        }
+        return total;
+    }
+}
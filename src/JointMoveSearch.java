@@ -0,0 +1,713 @@
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.*;
+import com.orbischallenge.ctz.objects.enums.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+public class JointMoveSearch {
+    /**
+     * How far an upper bound must fall below the best goodness found so far
+     * before a branch is discarded, relative to that goodness.
+     *
+     * The bounds are sums of the same doubles as the goodness itself, but not
+     * necessarily added in the same order, so they can be off by a rounding
+     * error. This margin ensures a branch is never pruned because of one.
+     */
+    static final double BOUND_SLACK = 1e-6;
+
+    /**
+     * The number of units and directions the search chooses between.
+     */
+    int units;
+    int directionCount;
+
+    /**
+     * The value of moving each unit in each direction, as computed by the AI.
+     */
+    double[][] actionValue;
+
+    /**
+     * The ID in the distance table of the tile each unit would end up on for
+     * each direction, or -1 if that direction is not an option for that unit
+     * at all.
+     */
+    int[][] tiles;
+
+    /**
+     * Whether or not each unit is alive. Only living units count towards the
+     * unity factor, and only they can collide with other units.
+     */
+    boolean[] alive;
+
+    /**
+     * Whether or not each unit was blocked by an enemy last turn. Such units
+     * have their action value halved when the first unit stands still.
+     */
+    boolean[] lastMoveFailed;
+
+    /**
+     * The index of Direction.NOWHERE among the directions.
+     */
+    int nowhere;
+
+    /**
+     * The unity factor of the units before they have moved, and the exponent
+     * applied to the ratio between it and the unity after they have moved.
+     */
+    int currentUnity;
+    double exponent;
+
+    /**
+     * The world and distance table used to evaluate the unity factor.
+     */
+    World world;
+    DistanceTable distanceTable;
+
+    /**
+     * The best combination of directions found by the last search, and its
+     * goodness. If no combination has positive goodness, the directions are
+     * all zero, as they always have been.
+     */
+    int[] bestDirections;
+    double bestGoodness;
+    boolean found;
+
+    /**
+     * The number of partial and complete combinations the last search looked
+     * at, and the number of branches it skipped because even their best case
+     * could not beat the best combination found so far. Both are cleared
+     * whenever the inputs are prepared, so they stay zero for planners that
+     * don't search.
+     */
+    long nodesExpanded;
+    long nodesPruned;
+
+    /**
+     * Whether or not the search is split across several threads.
+     *
+     * In parallel, every choice of direction for the first two units is
+     * searched as a separate task, and the best results of the tasks are
+     * combined in the same order the sequential search would have visited
+     * them. Either way, the chosen directions are exactly the same.
+     */
+    boolean parallel;
+
+    /**
+     * The time allowed for this turn, or null to search until done.
+     *
+     * Once the deadline passes, the search stops and keeps the best
+     * combination it has found. As directions are tried best first, that is
+     * usually a good one. The search never stops before it has found at
+     * least one combination, so there is always something to return.
+     */
+    TurnBudget budget;
+
+    /**
+     * Whether or not the last search was cut short by the deadline.
+     */
+    boolean timedOut;
+
+    /**
+     * The number of best directions each unit may choose from, or zero to
+     * let it choose from all of them.
+     *
+     * Standing still is always kept as well, whatever its action value. No
+     * two living units stand on the same tile, so everyone standing still
+     * never collides, and there is always some combination to find. With a
+     * limit of k, at most (k + 1)^units combinations are tried.
+     */
+    int candidateLimit;
+
+    /**
+     * The directions each unit will try, ordered from highest to lowest action
+     * value, so that good combinations are found early and prune the rest.
+     */
+    private int[][] orders;
+    private int[] orderCounts;
+
+    /**
+     * The smallest and largest factor the unity ratio could scale the sum of
+     * action values by.
+     */
+    private double minimumMultiplier;
+    private double maximumMultiplier;
+
+    /**
+     * The path length between every pair of tiles the units could end up on
+     * this turn.
+     *
+     * There are only as many such tiles as there are units and directions, so
+     * all of their distances are looked up once, before the search starts.
+     * The distance between unit i moving in direction a and unit j moving in
+     * direction b lives at index (i * directionCount + a) * stride + j *
+     * directionCount + b, where the stride is units * directionCount.
+     */
+    private int[] moveDistances;
+    private int stride;
+
+    /**
+     * The number of living units.
+     */
+    private int aliveCount;
+
+    /**
+     * The branch used when the search is not split, kept from turn to turn
+     * so that searching allocates nothing.
+     */
+    private Branch sequential;
+
+    /**
+     * The branches of the last parallel search.
+     */
+    private final List<Branch> branches = new ArrayList<>();
+
+    /**
+     * The number of path lengths looked up to fill in the distances above on
+     * the last search.
+     */
+    long distanceQueries;
+
+    /**
+     * Finds the combination of directions with the greatest goodness.
+     *
+     * This returns exactly the same combination as trying every combination
+     * in order and keeping the first one with the strictly greatest goodness.
+     * Directions are tried best first, and a branch is skipped as soon as the
+     * sum of its best remaining action values, scaled by the largest possible
+     * unity ratio, can no longer beat what has been found already.
+     */
+    public void search() {
+        if (this.bestDirections == null
+                || this.bestDirections.length != this.units) {
+            this.bestDirections = new int[this.units];
+        }
+        java.util.Arrays.fill(this.bestDirections, 0);
+        this.bestGoodness = Double.MIN_VALUE;
+        this.found = false;
+        this.timedOut = false;
+        if (!this.prepare()) {
+            // Some unit has nowhere to go, so there is nothing to find.
+            return;
+        }
+        this.computeMultipliers();
+        List<Branch> branches = this.branches;
+        branches.clear();
+        if (this.parallel && this.units > 1) {
+            // Split the search into one task for every pair of directions of
+            // the first two units that don't collide. Those pairs are listed
+            // in the order the sequential search would visit them.
+            for (int k0 = 0; k0 < this.orderCounts[0]; k0++) {
+                int d0 = this.orders[0][k0];
+                this.nodesExpanded++;
+                for (int k1 = 0; k1 < this.orderCounts[1]; k1++) {
+                    int d1 = this.orders[1][k1];
+                    if (this.alive[1]
+                            && this.tiles[1][d1] == this.tiles[0][d0]) {
+                        continue;
+                    }
+                    this.nodesExpanded++;
+                    branches.add(new Branch(new int[] {d0, d1}));
+                }
+            }
+            ForkJoinTask.invokeAll(branches);
+        } else {
+            if (this.sequential == null
+                    || this.sequential.choice.length != this.units) {
+                this.sequential = new Branch(new int[0]);
+            }
+            this.sequential.reset();
+            this.sequential.compute();
+            branches.add(this.sequential);
+        }
+        // Combine the results of all branches. Ties are broken exactly as
+        // within a branch, so the result doesn't depend on the split.
+        for (Branch branch : branches) {
+            this.nodesExpanded += branch.nodesExpanded;
+            this.nodesPruned += branch.nodesPruned;
+            this.timedOut |= branch.stopped;
+            if (branch.found && (branch.bestGoodness > this.bestGoodness
+                    || (this.found && branch.bestGoodness == this.bestGoodness
+                    && precedes(branch.bestDirections,
+                    this.bestDirections)))) {
+                this.bestGoodness = branch.bestGoodness;
+                System.arraycopy(branch.bestDirections, 0,
+                        this.bestDirections, 0, this.units);
+                this.found = true;
+            }
+        }
+    }
+
+    /**
+     * Determines whether one combination of directions comes before another
+     * when all combinations are listed in order.
+     * @param a The first combination.
+     * @param b The second combination.
+     * @return Whether or not the first combination comes first.
+     */
+    private static boolean precedes(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return a[i] < b[i];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sorts the directions of every unit, and looks up the distances between
+     * the tiles they could move to. This is shared by every planner that
+     * works from these inputs, and must be done before any of them run.
+     * @return Whether or not every unit has at least one direction to choose.
+     */
+    public boolean prepare() {
+        this.distanceQueries = 0;
+        this.nodesExpanded = 0;
+        this.nodesPruned = 0;
+        // Sort the allowed directions of every unit by action value. Ties are
+        // broken by the direction index to keep the order well defined.
+        if (this.orders == null || this.orders.length != this.units
+                || this.orders[0].length != this.directionCount) {
+            this.orders = new int[this.units][this.directionCount];
+            this.orderCounts = new int[this.units];
+        }
+        for (int i = 0; i < this.units; i++) {
+            int count = 0;
+            int[] order = this.orders[i];
+            for (int d = 0; d < this.directionCount; d++) {
+                if (this.tiles[i][d] < 0) {
+                    continue;
+                }
+                int k = count++;
+                while (k > 0 && this.actionValue[i][order[k - 1]]
+                        < this.actionValue[i][d]) {
+                    order[k] = order[k - 1];
+                    k--;
+                }
+                order[k] = d;
+            }
+            // Drop all but the best few, keeping standing still if it was
+            // allowed to begin with.
+            if (this.candidateLimit > 0 && count > this.candidateLimit) {
+                int kept = this.candidateLimit;
+                for (int k = kept; k < count; k++) {
+                    if (order[k] == this.nowhere) {
+                        order[kept++] = this.nowhere;
+                        break;
+                    }
+                }
+                count = kept;
+            }
+            this.orderCounts[i] = count;
+            if (count == 0) {
+                return false;
+            }
+        }
+        this.aliveCount = 0;
+        for (int i = 0; i < this.units; i++) {
+            if (this.alive[i]) {
+                this.aliveCount++;
+            }
+        }
+        this.computeDistances();
+        return true;
+    }
+
+    /**
+     * Lists the directions a unit may move in, from best to worst. Only the
+     * first getOrderCount(unit) entries are meaningful.
+     * @param unit The unit in question.
+     * @return The allowed directions of the unit, ordered by action value.
+     */
+    public int[] getOrder(int unit) {
+        return this.orders[unit];
+    }
+
+    /**
+     * Counts the directions a unit may move in.
+     * @param unit The unit in question.
+     * @return The number of allowed directions of the unit.
+     */
+    public int getOrderCount(int unit) {
+        return this.orderCounts[unit];
+    }
+
+    /**
+     * Looks up the distance between two living units after they have moved.
+     * @param i The first unit.
+     * @param di The direction of the first unit.
+     * @param j The second unit.
+     * @param dj The direction of the second unit.
+     * @return The length of the shortest path between the two new tiles.
+     */
+    public int getMoveDistance(int i, int di, int j, int dj) {
+        return this.moveDistances[this.index(i, di, j, dj)];
+    }
+
+    /**
+     * Finds the weight of a unit's action value, which is halved for units
+     * that were blocked last turn when the first unit stands still.
+     * @param unit The unit in question.
+     * @param d0 The direction of the first unit.
+     * @return The factor the unit's action value is multiplied by.
+     */
+    public double getFactor(int unit, int d0) {
+        return d0 == this.nowhere && this.lastMoveFailed[unit] ? 0.5 : 1;
+    }
+
+    /**
+     * Counts the living units.
+     * @return The number of units that are alive.
+     */
+    public int getAliveCount() {
+        return this.aliveCount;
+    }
+
+    /**
+     * Looks up the distance between every pair of tiles that two different
+     * living units could move to.
+     */
+    private void computeDistances() {
+        this.stride = this.units * this.directionCount;
+        if (this.moveDistances == null
+                || this.moveDistances.length != this.stride * this.stride) {
+            this.moveDistances = new int[this.stride * this.stride];
+        }
+        for (int i = 0; i < this.units; i++) {
+            for (int j = 0; j < i; j++) {
+                // Dead units don't count towards the unity factor.
+                if (!this.alive[i] || !this.alive[j]) {
+                    continue;
+                }
+                for (int ki = 0; ki < this.orderCounts[i]; ki++) {
+                    int di = this.orders[i][ki];
+                    for (int kj = 0; kj < this.orderCounts[j]; kj++) {
+                        int dj = this.orders[j][kj];
+                        int len = this.distanceTable.getPathLength(this.world,
+                                this.tiles[i][di], this.tiles[j][dj]);
+                        this.moveDistances[this.index(i, di, j, dj)] = len;
+                        this.moveDistances[this.index(j, dj, i, di)] = len;
+                        this.distanceQueries++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds where the distance between two moved units is stored.
+     * @param i The first unit.
+     * @param di The direction of the first unit.
+     * @param j The second unit.
+     * @param dj The direction of the second unit.
+     * @return The index of their distance in the table of move distances.
+     */
+    private int index(int i, int di, int j, int dj) {
+        return (i * this.directionCount + di) * this.stride
+                + j * this.directionCount + dj;
+    }
+
+    /**
+     * Computes the range the unity ratio can take, from the smallest and
+     * largest distance every pair of living units could end up apart.
+     */
+    private void computeMultipliers() {
+        int minimumUnity = 0;
+        int maximumUnity = 0;
+        for (int i = 0; i < this.units; i++) {
+            if (!this.alive[i]) {
+                continue;
+            }
+            for (int j = 0; j < i; j++) {
+                if (!this.alive[j]) {
+                    continue;
+                }
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int ki = 0; ki < this.orderCounts[i]; ki++) {
+                    int di = this.orders[i][ki];
+                    for (int kj = 0; kj < this.orderCounts[j]; kj++) {
+                        int dj = this.orders[j][kj];
+                        int len = this.moveDistances[this.index(i, di, j, dj)];
+                        min = Math.min(min, len);
+                        max = Math.max(max, len);
+                    }
+                }
+                minimumUnity += min;
+                maximumUnity += max;
+            }
+        }
+        if (this.aliveCount < 2) {
+            minimumUnity = 1;
+            maximumUnity = 1;
+        }
+        this.maximumMultiplier = Math.pow(
+                1d * this.currentUnity / minimumUnity, this.exponent);
+        this.minimumMultiplier = Math.pow(
+                1d * this.currentUnity / maximumUnity, this.exponent);
+    }
+
+    /**
+     * Bounds the goodness of any combination whose action values sum to at
+     * most the given value.
+     * @param value The largest possible sum of weighted action values.
+     * @return The largest possible goodness.
+     */
+    private double upperBound(double value) {
+        return value * (value >= 0
+                ? this.maximumMultiplier
+                : this.minimumMultiplier);
+    }
+
+    /**
+     * One part of the search, starting from a fixed choice of directions for
+     * the first few units. Each branch keeps its own best combination, so that
+     * branches can be searched at the same time.
+     */
+    private class Branch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The search this branch is a part of.
+         */
+        private final JointMoveSearch search = JointMoveSearch.this;
+
+        /**
+         * The directions the first few units are fixed to.
+         */
+        private final int[] prefix;
+
+        /**
+         * The action value multiplier applied to each unit, which only
+         * depends on the direction of the first unit.
+         */
+        private final double[] factors;
+
+        /**
+         * The sum of the largest remaining weighted action values of all
+         * units from a given unit onwards, used for the upper bound.
+         */
+        private final double[] restMaximum;
+
+        /**
+         * The directions chosen so far at each level of the search.
+         */
+        private final int[] choice;
+
+        /**
+         * The best combination found in this branch, and its goodness.
+         */
+        int[] bestDirections;
+        double bestGoodness;
+        boolean found;
+
+        /**
+         * The number of combinations this branch looked at and skipped.
+         */
+        long nodesExpanded;
+        long nodesPruned;
+
+        /**
+         * Whether or not this branch stopped early because time ran out.
+         */
+        boolean stopped;
+
+        /**
+         * Creates a branch of the search.
+         * @param prefix The directions of the first few units.
+         */
+        Branch(int[] prefix) {
+            this.prefix = prefix;
+            int units = this.search.units;
+            this.factors = new double[units];
+            this.restMaximum = new double[units + 1];
+            this.choice = new int[units];
+            this.bestDirections = new int[units];
+            this.bestGoodness = Double.MIN_VALUE;
+        }
+
+        /**
+         * Forgets the results of the last search, so that this branch can be
+         * searched again.
+         */
+        void reset() {
+            java.util.Arrays.fill(this.bestDirections, 0);
+            this.bestGoodness = Double.MIN_VALUE;
+            this.found = false;
+            this.nodesExpanded = 0;
+            this.nodesPruned = 0;
+            this.stopped = false;
+        }
+
+        /**
+         * Fixes the directions of the first few units, then searches the
+         * rest.
+         */
+        @Override
+        protected void compute() {
+            double value = 0;
+            int unity = 0;
+            for (int unit = 0; unit < this.prefix.length; unit++) {
+                int d = this.prefix[unit];
+                if (unit == 0) {
+                    this.computeFactors(d);
+                }
+                value += this.search.actionValue[unit][d]
+                        * this.factors[unit];
+                this.choice[unit] = d;
+                unity += this.newDistances(unit, d);
+            }
+            if (this.prefix.length < this.search.units) {
+                this.expand(this.prefix.length, value, unity);
+            } else {
+                this.evaluate(value, unity);
+            }
+        }
+
+        /**
+         * Sums the distances between a living unit and the living units
+         * before it, which are the only ones that are new at its level.
+         * @param unit The unit that is moving.
+         * @param d The direction it is moving in.
+         * @return The distance added to the unity factor by this unit.
+         */
+        private int newDistances(int unit, int d) {
+            int added = 0;
+            if (this.search.alive[unit]) {
+                for (int j = 0; j < unit; j++) {
+                    if (this.search.alive[j]) {
+                        added += this.search.moveDistances[
+                                this.search.index(unit, d, j,
+                                        this.choice[j])];
+                    }
+                }
+            }
+            return added;
+        }
+
+        /**
+         * Tries every direction for the given unit, and searches onwards from
+         * each one that could still lead to a better combination.
+         * @param unit The unit whose direction is being chosen.
+         * @param partialValue The weighted action values of the units before
+         * it.
+         * @param partialUnity The total distance between the living units
+         * before it.
+         */
+        private void expand(int unit, double partialValue, int partialUnity) {
+            int[] order = this.search.orders[unit];
+            int count = this.search.orderCounts[unit];
+            for (int k = 0; k < count; k++) {
+                // Every so often, check whether we've run out of time. If we
+                // have, and have something to show for it, stop here.
+                if ((this.nodesExpanded & 255) == 0 && this.found
+                        && this.search.budget != null
+                        && this.search.budget.isExpired()) {
+                    this.stopped = true;
+                }
+                if (this.stopped) {
+                    return;
+                }
+                int d = order[k];
+                // Living units can't end up on the same tile as an earlier
+                // unit.
+                if (this.search.alive[unit] && this.collides(unit, d)) {
+                    continue;
+                }
+                // Standing still with the first unit discourages units that
+                // were blocked last turn, so the rest of the weights depend on
+                // it.
+                if (unit == 0) {
+                    this.computeFactors(d);
+                }
+                double value = partialValue
+                        + this.search.actionValue[unit][d] * this.factors[unit];
+                if (this.search.upperBound(
+                        value + this.restMaximum[unit + 1])
+                        < this.bestGoodness - BOUND_SLACK
+                        * Math.max(1, Math.abs(this.bestGoodness))) {
+                    // Past the first unit, the remaining directions are only
+                    // worse, so all of them can be skipped.
+                    if (unit == 0) {
+                        this.nodesPruned++;
+                        continue;
+                    }
+                    this.nodesPruned += count - k;
+                    break;
+                }
+                this.nodesExpanded++;
+                this.choice[unit] = d;
+                // Only the distances to the units before this one are new, the
+                // rest were added on the levels above.
+                int unity = partialUnity + this.newDistances(unit, d);
+                if (unit + 1 < this.search.units) {
+                    this.expand(unit + 1, value, unity);
+                } else {
+                    this.evaluate(value, unity);
+                }
+            }
+        }
+
+        /**
+         * Determines whether a unit moving in a direction would end up on the
+         * same tile as one of the units before it.
+         * @param unit The unit that is moving.
+         * @param d The direction it is moving in.
+         * @return Whether or not the unit collides with an earlier unit.
+         */
+        private boolean collides(int unit, int d) {
+            int tile = this.search.tiles[unit][d];
+            for (int j = 0; j < unit; j++) {
+                if (tile == this.search.tiles[j][this.choice[j]]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Computes the weight of every unit's action value, and the best
+         * weighted action values that remain from each unit onwards.
+         * @param d0 The direction of the first unit.
+         */
+        private void computeFactors(int d0) {
+            int units = this.search.units;
+            for (int i = 0; i < units; i++) {
+                this.factors[i] = this.search.getFactor(i, d0);
+            }
+            this.restMaximum[units] = 0;
+            for (int i = units - 1; i >= 0; i--) {
+                int best = this.search.orders[i][0];
+                this.restMaximum[i] = this.restMaximum[i + 1]
+                        + this.search.actionValue[i][best] * this.factors[i];
+            }
+        }
+
+        /**
+         * Evaluates a complete combination of directions, and keeps it if it
+         * is the best one so far.
+         * @param value The sum of the weighted action values of all units.
+         * @param unity The total distance between all living units.
+         */
+        private void evaluate(double value, int unity) {
+            // With fewer than two living units, there is no distance to speak
+            // of.
+            int resultingUnity = this.search.aliveCount < 2 ? 1 : unity;
+            double goodness = value * Math.pow(
+                    1d * this.search.currentUnity / resultingUnity,
+                    this.search.exponent);
+            // Keep the combination that would have been found first, had every
+            // combination been tried in order.
+            if (goodness > this.bestGoodness || (this.found
+                    && goodness == this.bestGoodness
+                    && precedes(this.choice, this.bestDirections))) {
+                this.bestGoodness = goodness;
+                System.arraycopy(this.choice, 0, this.bestDirections, 0,
+                        this.search.units);
+                this.found = true;
+            }
+        }
+    }
+}
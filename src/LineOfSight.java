@@ -0,0 +1,149 @@
+import com.orbischallenge.game.engine.*;
+
+public class LineOfSight {
+    /**
+     * The width and height of the map this table was built for.
+     */
+    final int width;
+    final int height;
+
+    /**
+     * How many open tiles lie in a straight line from every tile, in each of
+     * the eight directions, before the first wall or the edge of the map.
+     *
+     * The entry for the tile (x, y) looking along (dx, dy) lives at index
+     * (x * height + y) * 9 + (dx + 1) * 3 + (dy + 1). The entry for (0, 0) is
+     * unused, and walls have a length of zero in every direction.
+     */
+    final short[] rayLengths;
+
+    /**
+     * The longest ray anywhere on the map.
+     */
+    final int maximumRayLength;
+
+    /**
+     * Builds the ray table for the given map.
+     *
+     * The ray from a tile is one longer than the ray from the next tile along
+     * the same direction, so each direction is filled in by walking the map
+     * against that direction and reusing the tile that was just done.
+     * @param grid The map.
+     */
+    public LineOfSight(MapGrid grid) {
+        this.width = grid.width;
+        this.height = grid.height;
+        this.rayLengths = new short[this.width * this.height * 9];
+        int longest = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0) {
+                    continue;
+                }
+                for (int i = 0; i < this.width; i++) {
+                    int x = dx > 0 ? this.width - 1 - i : i;
+                    for (int j = 0; j < this.height; j++) {
+                        int y = dy > 0 ? this.height - 1 - j : j;
+                        if (grid.index(x, y) < 0
+                                || grid.index(x + dx, y + dy) < 0) {
+                            continue;
+                        }
+                        int length =
+                                1 + this.getRayLength(x + dx, y + dy, dx, dy);
+                        this.rayLengths[this.index(x, y, dx, dy)] =
+                                (short) length;
+                        longest = Math.max(longest, length);
+                    }
+                }
+            }
+        }
+        this.maximumRayLength = longest;
+    }
+
+    /**
+     * Creates the ray table for the given map from rays worked out before,
+     * such as ones read back from an AnalysisCache.
+     * @param grid The map.
+     * @param rayLengths The rays, laid out as in the field of the same name.
+     * @param maximumRayLength The longest of the rays.
+     */
+    LineOfSight(MapGrid grid, short[] rayLengths, int maximumRayLength) {
+        this.width = grid.width;
+        this.height = grid.height;
+        this.rayLengths = rayLengths;
+        this.maximumRayLength = maximumRayLength;
+    }
+
+    /**
+     * Finds where the ray from a tile in a direction is stored.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param dx The horizontal step of the direction, between -1 and 1.
+     * @param dy The vertical step of the direction, between -1 and 1.
+     * @return The index of the ray in the table.
+     */
+    private int index(int x, int y, int dx, int dy) {
+        return (x * this.height + y) * 9 + (dx + 1) * 3 + (dy + 1);
+    }
+
+    /**
+     * Looks up how far one can see from a tile in a direction.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param dx The horizontal step of the direction, between -1 and 1.
+     * @param dy The vertical step of the direction, between -1 and 1.
+     * @return The number of open tiles before the first wall, or zero if the
+     * tile is a wall or off the map.
+     */
+    public int getRayLength(int x, int y, int dx, int dy) {
+        if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+            return 0;
+        }
+        return this.rayLengths[this.index(x, y, dx, dy)];
+    }
+
+    /**
+     * Determines whether a shooter could hit a target with a gun of the given
+     * range. Shots only travel in the eight directions, and are stopped by
+     * the first wall in their way.
+     * @param shooter The position of the shooter.
+     * @param target The position of the target.
+     * @param range The range of the shooter's gun.
+     * @return Whether or not the target is in the shooter's line of fire.
+     */
+    public boolean canShooterShootTarget(Point shooter, Point target,
+                                         int range) {
+        return this.canShooterShootTarget(shooter.getX(), shooter.getY(),
+                target.getX(), target.getY(), range);
+    }
+
+    /**
+     * Determines whether a shooter could hit a target with a gun of the given
+     * range, given the coordinates of both.
+     * @param shooterX The x coordinate of the shooter.
+     * @param shooterY The y coordinate of the shooter.
+     * @param targetX The x coordinate of the target.
+     * @param targetY The y coordinate of the target.
+     * @param range The range of the shooter's gun.
+     * @return Whether or not the target is in the shooter's line of fire.
+     */
+    public boolean canShooterShootTarget(int shooterX, int shooterY,
+                                         int targetX, int targetY,
+                                         int range) {
+        int dx = targetX - shooterX;
+        int dy = targetY - shooterY;
+        // The target must lie along one of the eight directions.
+        if (dx != 0 && dy != 0 && Math.abs(dx) != Math.abs(dy)) {
+            return false;
+        }
+        int distance = Math.max(Math.abs(dx), Math.abs(dy));
+        if (distance > range) {
+            return false;
+        }
+        if (distance == 0) {
+            return true;
+        }
+        return distance <= this.getRayLength(shooterX, shooterY,
+                Integer.signum(dx), Integer.signum(dy));
+    }
+}
@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ctz.MapAnalysis")
+@Label("Map Analysis")
+@Category("Capture the Zone")
+@Description("The tables an AI builds from the map on its first turn")
+public class MapAnalysisEvent extends Event {
+    @Label("AI")
+    String ai;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Passable Tiles")
+    int passableTiles;
+
+    @Label("Maximum Effective Range")
+    int maximumEffectiveRange;
+}
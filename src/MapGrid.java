@@ -0,0 +1,212 @@
+import com.orbischallenge.ctz.objects.World;
+import com.orbischallenge.ctz.objects.enums.TileType;
+import com.orbischallenge.game.engine.*;
+
+public class MapGrid {
+    /**
+     * The width and height of the map.
+     */
+    final int width;
+    final int height;
+
+    /**
+     * Whether or not each tile is a wall, one bit per tile, with the tile at
+     * x * height + y in bit (x * height + y) % 64 of word (x * height + y) /
+     * 64.
+     */
+    final long[] walls;
+
+    /**
+     * The ID of every tile on the map, indexed by x * height + y.
+     *
+     * Walls are given the ID -1. Every other tile is given the next free ID,
+     * so that the IDs of passable tiles are exactly 0 to tileCount - 1.
+     */
+    final int[] tileIds;
+
+    /**
+     * The number of passable tiles on the map.
+     */
+    final int tileCount;
+
+    /**
+     * The coordinates of every passable tile, indexed by tile ID.
+     */
+    final int[] tileX;
+    final int[] tileY;
+
+    /**
+     * Creates the grid for a map of the given size and walls, and numbers
+     * the tiles that aren't walls.
+     * @param width The width of the map.
+     * @param height The height of the map.
+     * @param walls Whether or not each tile is a wall, as above.
+     */
+    private MapGrid(int width, int height, long[] walls) {
+        this.width = width;
+        this.height = height;
+        this.walls = walls;
+        int area = width * height;
+        this.tileIds = new int[area];
+        int count = 0;
+        for (int tile = 0; tile < area; tile++) {
+            this.tileIds[tile] = this.isWall(tile) ? -1 : count++;
+        }
+        this.tileCount = count;
+        this.tileX = new int[count];
+        this.tileY = new int[count];
+        for (int tile = 0; tile < area; tile++) {
+            int id = this.tileIds[tile];
+            if (id >= 0) {
+                this.tileX[id] = tile / height;
+                this.tileY[id] = tile % height;
+            }
+        }
+    }
+
+    /**
+     * Creates the grid for the map with the given walls.
+     * @param walls Whether or not each tile is a wall, indexed by [x][y].
+     */
+    public MapGrid(boolean[][] walls) {
+        this(walls.length, walls.length == 0 ? 0 : walls[0].length,
+                pack(walls));
+    }
+
+    /**
+     * Packs a map of walls into one bit per tile.
+     * @param walls Whether or not each tile is a wall, indexed by [x][y].
+     * @return The walls, as stored in the walls field.
+     */
+    private static long[] pack(boolean[][] walls) {
+        int height = walls.length == 0 ? 0 : walls[0].length;
+        long[] bits = new long[(walls.length * height + 63) / 64];
+        for (int x = 0; x < walls.length; x++) {
+            for (int y = 0; y < height; y++) {
+                if (walls[x][y]) {
+                    int tile = x * height + y;
+                    bits[tile >> 6] |= 1L << tile;
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Reads the map from the world. The size of the map is found with a few
+     * bounds checks, doubling along each axis until one fails and then
+     * narrowing down on the edge, after which every tile is read once.
+     * @param world The state of the world.
+     * @return The grid of the world's map.
+     */
+    public static MapGrid read(World world) {
+        int width = edge(world, true);
+        int height = edge(world, false);
+        long[] bits = new long[(width * height + 63) / 64];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (world.getTile(new Point(x, y)) == TileType.WALL) {
+                    int tile = x * height + y;
+                    bits[tile >> 6] |= 1L << tile;
+                }
+            }
+        }
+        return new MapGrid(width, height, bits);
+    }
+
+    /**
+     * Finds the length of the map along one axis.
+     * @param world The state of the world.
+     * @param horizontal Whether to measure the width rather than the height.
+     * @return The number of tiles along the axis.
+     */
+    private static int edge(World world, boolean horizontal) {
+        // The first coordinate that is known to be off the map, and the last
+        // one known to be on it.
+        int outside = 1;
+        while (isWithinBounds(world, horizontal, outside)) {
+            outside *= 2;
+        }
+        int inside = outside / 2 - 1;
+        while (outside - inside > 1) {
+            int middle = (inside + outside) >>> 1;
+            if (isWithinBounds(world, horizontal, middle)) {
+                inside = middle;
+            } else {
+                outside = middle;
+            }
+        }
+        return outside;
+    }
+
+    /**
+     * Determines whether a coordinate along one axis is on the map.
+     * @param world The state of the world.
+     * @param horizontal Whether the coordinate is an x coordinate rather than
+     * a y coordinate.
+     * @param k The coordinate.
+     * @return Whether or not the tile at that coordinate and zero along the
+     * other axis lies on the map.
+     */
+    private static boolean isWithinBounds(World world, boolean horizontal,
+                                          int k) {
+        return world.isWithinBounds(horizontal ? new Point(k, 0)
+                : new Point(0, k));
+    }
+
+    /**
+     * Determines whether a tile lies on the map.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return Whether or not the tile is within the bounds of the map.
+     */
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height;
+    }
+
+    /**
+     * Determines whether a tile is a wall.
+     * @param tile The tile, as x * height + y.
+     * @return Whether or not the tile is a wall.
+     */
+    public boolean isWall(int tile) {
+        return (this.walls[tile >> 6] & 1L << tile) != 0;
+    }
+
+    /**
+     * Finds a passable tile.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The tile, as x * height + y, or -1 if it is a wall or off the
+     * map.
+     */
+    public int index(int x, int y) {
+        if (!this.contains(x, y)) {
+            return -1;
+        }
+        int tile = x * this.height + y;
+        return this.isWall(tile) ? -1 : tile;
+    }
+
+    /**
+     * Finds the ID of the tile at the given coordinates.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The ID of the tile, or -1 if it is a wall or off the map.
+     */
+    public int getTileId(int x, int y) {
+        if (!this.contains(x, y)) {
+            return -1;
+        }
+        return this.tileIds[x * this.height + y];
+    }
+
+    /**
+     * Finds the ID of the tile at the given point.
+     * @param p The point in question.
+     * @return The ID of the tile, or -1 if it is a wall or off the map.
+     */
+    public int getTileId(Point p) {
+        return this.getTileId(p.getX(), p.getY());
+    }
+}
@@ -0,0 +1,23 @@
+public interface MoveConstraint {
+    /**
+     * Determines whether a unit may move in a direction, given the directions
+     * already chosen for the units before it.
+     * @param moves The moves being planned.
+     * @param chosen The directions of the units before this one.
+     * @param unit The unit that is moving.
+     * @param direction The direction it would move in.
+     * @return Whether or not the move is allowed.
+     */
+    boolean allows(JointMoveSearch moves, int[] chosen, int unit,
+                   int direction);
+
+    /**
+     * Computes the factor the total action value of the first few units is
+     * multiplied by. A constraint that only forbids moves returns 1.
+     * @param moves The moves being planned.
+     * @param chosen The directions chosen for the units.
+     * @param count The number of units whose directions have been chosen.
+     * @return The factor to scale the total action value by.
+     */
+    double getMultiplier(JointMoveSearch moves, int[] chosen, int count);
+}
@@ -0,0 +1,166 @@
+public class PathFinder {
+    /**
+     * The distance given to tiles the last spread never reached.
+     */
+    static final int UNREACHED = Integer.MAX_VALUE;
+
+    /**
+     * The width and height of the map.
+     */
+    final int width;
+    final int height;
+
+    /**
+     * The map the paths are found on.
+     */
+    final MapGrid grid;
+
+    /**
+     * The cost of stepping onto each tile, indexed by x * height + y. All
+     * ones by default, which makes the cost of a path its length. Raising the
+     * weight of a tile makes paths go around it unless that is too far.
+     */
+    final int[] weights;
+
+    /**
+     * The cost of the cheapest path from each tile to the nearest source, as
+     * measured by the last call to spread.
+     */
+    final int[] distances;
+
+    /**
+     * A binary min-heap of tiles waiting to be visited. Each entry holds the
+     * cost of reaching a tile in its upper half and the tile in its lower
+     * half, so that comparing entries compares costs. A tile may be in the
+     * heap several times, and only its cheapest entry counts.
+     */
+    private long[] heap;
+    private int heapSize;
+
+    /**
+     * Creates a path finder for the given map.
+     * @param grid The map.
+     */
+    public PathFinder(MapGrid grid) {
+        this.grid = grid;
+        this.width = grid.width;
+        this.height = grid.height;
+        int area = this.width * this.height;
+        this.weights = new int[area];
+        java.util.Arrays.fill(this.weights, 1);
+        this.distances = new int[area];
+        this.heap = new long[Math.max(16, area)];
+    }
+
+    /**
+     * Removes every source, leaving every tile unreached.
+     */
+    public void clear() {
+        java.util.Arrays.fill(this.distances, UNREACHED);
+        this.heapSize = 0;
+    }
+
+    /**
+     * Adds a tile to measure costs to. Walls, tiles off the map and tiles
+     * that are already sources are ignored.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     */
+    public void addSource(int x, int y) {
+        int tile = this.grid.index(x, y);
+        if (tile >= 0 && this.distances[tile] != 0) {
+            this.distances[tile] = 0;
+            this.push(0, tile);
+        }
+    }
+
+    /**
+     * Measures the cost of the cheapest path from every tile to the nearest
+     * source with Dijkstra's algorithm, started from all of them at once.
+     * As with a path, each step costs the weight of the tile stepped onto,
+     * so a tile's own weight isn't part of its cost, but the source's is.
+     */
+    public void spread() {
+        while (this.heapSize > 0) {
+            long entry = this.pop();
+            int distance = (int) (entry >>> 32);
+            int current = (int) entry;
+            // Skip entries for tiles that have since been reached more
+            // cheaply.
+            if (distance > this.distances[current]) {
+                continue;
+            }
+            // The paths lead towards the sources, so the step from this tile
+            // out to the next costs the weight of this tile.
+            int x = current / this.height;
+            int y = current % this.height;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int next = this.grid.index(x + dx, y + dy);
+                    if (next < 0 || next == current) {
+                        continue;
+                    }
+                    int newDistance = distance + this.weights[current];
+                    if (newDistance < this.distances[next]) {
+                        this.distances[next] = newDistance;
+                        this.push(newDistance, next);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up the cost of the cheapest path from a tile to the nearest
+     * source, as measured by the last call to spread.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The cost of the path, or UNREACHED if there is none.
+     */
+    public int getDistance(int x, int y) {
+        int tile = this.grid.index(x, y);
+        return tile < 0 ? UNREACHED : this.distances[tile];
+    }
+
+    /**
+     * Adds a tile to the heap.
+     * @param distance The cost of reaching the tile.
+     * @param tile The tile.
+     */
+    private void push(int distance, int tile) {
+        if (this.heapSize == this.heap.length) {
+            this.heap = java.util.Arrays.copyOf(this.heap, 2 * this.heapSize);
+        }
+        long entry = ((long) distance << 32) | tile;
+        int k = this.heapSize++;
+        while (k > 0 && this.heap[(k - 1) / 2] > entry) {
+            this.heap[k] = this.heap[(k - 1) / 2];
+            k = (k - 1) / 2;
+        }
+        this.heap[k] = entry;
+    }
+
+    /**
+     * Removes the cheapest entry from the heap.
+     * @return The entry that was removed.
+     */
+    private long pop() {
+        long top = this.heap[0];
+        long last = this.heap[--this.heapSize];
+        int k = 0;
+        while (2 * k + 1 < this.heapSize) {
+            int child = 2 * k + 1;
+            if (child + 1 < this.heapSize
+                    && this.heap[child + 1] < this.heap[child]) {
+                child++;
+            }
+            if (this.heap[child] >= last) {
+                break;
+            }
+            this.heap[k] = this.heap[child];
+            k = child;
+        }
+        this.heap[k] = last;
+        return top;
+    }
+}
@@ -1,8 +1,39 @@
 import com.orbischallenge.game.engine.*;
 import com.orbischallenge.ctz.objects.*;
 import com.orbischallenge.ctz.objects.enums.*;
+import java.nio.ByteBuffer;
 
 public class PlayerAI {
+    /**
+     * Every direction a unit can move in, in the order of Direction.values().
+     *
+     * Direction.values() returns a new copy of this array every time it is
+     * called, so we keep one of our own rather than calling it in our loops.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * How far moving in each of the directions above shifts a unit along
+     * each axis, so that new positions can be computed without creating any
+     * points.
+     */
+    private static final int[] DIRECTION_X = new int[DIRECTIONS.length];
+    private static final int[] DIRECTION_Y = new int[DIRECTIONS.length];
+
+    static {
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            Point step = DIRECTIONS[d].movePoint(Point.origin());
+            DIRECTION_X[d] = step.getX();
+            DIRECTION_Y[d] = step.getY();
+        }
+    }
+
+    /**
+     * How much fire the enemies could set up by moving counts against a
+     * tile, relative to the 20 for fire they could deal without moving.
+     */
+    private static final double NEXT_TURN_FIRE_WEIGHT = 5;
+
     /**
      * Whether or not the statistics listed below have been set.
      *
@@ -33,30 +64,290 @@ public class PlayerAI {
      */
     Direction[] lastMoves;
 
+    /**
+     * The size of the map, where its walls are, and the ID of every tile that
+     * isn't a wall, read from the world on the first turn.
+     */
+    MapGrid mapGrid;
+
+    /**
+     * Keeps the distance and ray tables of every map played on, so that a
+     * later match on the same map can skip building them, or null if that is
+     * turned off.
+     */
+    AnalysisCache analysisCache;
+
+    /**
+     * The length of the shortest path between every pair of tiles.
+     *
+     * The walls of the map never move, so rather than asking the world for a
+     * path every time we need one, we compute all of them once and simply
+     * look them up afterwards. On large maps that takes longer than a turn,
+     * so the table is built over the first few turns, at most
+     * TABLE_BUILD_SHARE of each, and the world is asked until it is done.
+     */
+    DistanceTable distanceTable;
+
+    /**
+     * The share of a turn's budget that may be spent building the distance
+     * table, leaving the rest of the turn for deciding what to do.
+     */
+    static final double TABLE_BUILD_SHARE = 0.5;
+
+    /**
+     * The distance from every tile to each pickup and control point.
+     *
+     * The action values need the distance from each of the tiles our units
+     * could move to to every one of these, which is a lot of lookups for a
+     * handful of targets. One field per target answers them from a single
+     * array, and keeps working on maps too large for the distance table.
+     * Control points never move, and pickups stay put until taken, so their
+     * fields are kept from one turn to the next. Enemies move every turn, so
+     * they are left to the distance table.
+     */
+    DistanceFieldCache featureFields;
+
+    /**
+     * How far one can see from every tile in every direction.
+     *
+     * Like the path lengths, lines of sight only depend on the walls, so they
+     * are computed once on the first turn and used for every shot we consider
+     * afterwards.
+     */
+    LineOfSight lineOfSight;
+
+    /**
+     * How much damage the enemies could deal to every tile this turn.
+     *
+     * This is rebuilt at the start of every turn, and used both to decide
+     * when to raise shields and to steer units away from enemy fire.
+     */
+    ThreatMap threatMap;
+
+    /**
+     * Where every enemy could be after its next move, and what it could
+     * shoot from there.
+     *
+     * This is also rebuilt at the start of every turn, and used to steer
+     * units away from fire the enemies could set up by stepping one tile.
+     */
+    EnemyReach enemyReach;
+
+    /**
+     * The search used to pick the best combination of moves for our units.
+     *
+     * It is kept between turns so that the number of combinations it looked
+     * at and skipped on the last turn can be inspected, and so that it can be
+     * switched between searching on one thread and searching in parallel.
+     * It searches on one thread unless the ai.parallel system property is
+     * set.
+     */
+    JointMoveSearch jointMoveSearch;
+
+    /**
+     * The solver used to choose which enemy each of our units fires upon.
+     *
+     * Like the search above, it is kept between turns so that the time it
+     * took on the last turn can be inspected.
+     */
+    TargetAssignment targetAssignment;
+
+    /**
+     * The largest team for which every combination of moves is searched.
+     *
+     * The number of combinations grows ninefold with every unit, so larger
+     * teams are planned with the beam planner below instead, which only
+     * keeps the most promising partial plans as it goes.
+     */
+    int exhaustiveSearchLimit;
+
+    /**
+     * The planner used for teams larger than the limit above. Its width, and
+     * the constraints it plans under, may be changed freely.
+     */
+    BeamPlanner beamPlanner;
+
+    /**
+     * Whether or not to check, every turn, whether limiting each unit to its
+     * best few directions changed the moves chosen. This searches every
+     * direction as well, so it is only meant for measuring the limit, which
+     * is set with the ai.candidates system property. The result is kept by
+     * the profiler.
+     */
+    boolean checkCandidateLimit;
+
+    /**
+     * Whether or not to plan moves by matching units to tiles instead, which
+     * takes the same time whatever the size of the team. Set with the
+     * ai.assignment system property.
+     */
+    boolean useAssignment;
+
+    /**
+     * The planner used when planning by matching units to tiles.
+     */
+    AssignmentPlanner assignmentPlanner;
+
+    /**
+     * How many moves ahead to plan: 1 to only plan this turn's moves, or 2 to
+     * also look at the moves that could follow them next turn. Set with the
+     * ai.lookahead system property, and only used for teams small enough to
+     * search exhaustively.
+     */
+    int lookahead;
+
+    /**
+     * The planner used when looking two moves ahead. The number of pairs of
+     * moves it weighs for each unit is set with the ai.lookahead.options
+     * system property.
+     */
+    TwoPlySearch twoPlySearch;
+
+    /**
+     * The time we allow ourselves each turn.
+     *
+     * Should a turn take too long, the move is forfeit, which is far worse
+     * than a move that is merely not the best. Thus, every phase of a turn
+     * checks whether time has run out, and if it has, falls back to something
+     * quick: units stop deciding, and the search returns the best combination
+     * it has found so far. Set in milliseconds with the ai.turnBudgetMs system
+     * property, which is 500 by default, or 0 for no limit.
+     */
+    TurnBudget turnBudget;
+
+    /**
+     * How long the last turn took, in nanoseconds, and whether or not it ran
+     * out of time along the way.
+     */
+    long lastTurnNanos;
+    boolean lastTurnOverBudget;
+
+    /**
+     * Times every phase of every turn and counts the queries each turn makes,
+     * so that a slow turn can be traced to the phase responsible.
+     */
+    TurnProfiler profiler;
+
+    /**
+     * Where a record of every turn and the decisions made in it is written,
+     * or null if turns aren't being logged. Set with the ai.replayLog system
+     * property.
+     */
+    ReplayLog replayLog;
+
+    /**
+     * Scratch space for every turn, kept from one turn to the next so that a
+     * turn allocates nothing once the number of units stays the same. These
+     * are reallocated whenever the number of units, pickups or control points
+     * changes.
+     */
+    private boolean[] moved;
+    private EnemyUnit[] targets;
+    private double[][] actionValue;
+    private double[][] secondValues;
+    private int[] fullDirections;
+    private int[] enemyTiles;
+    private int[] enemyCoefficients;
+    private DistanceField[] pickupFields;
+    private DistanceField[] controlPointFields;
+
+    /**
+     * What every unit wants from every pickup, enemy and control point this
+     * turn, laid out as arrays so that scoring a tile is a few tight loops.
+     */
+    private ScoringKernel scoring;
+
     /**
      * Default constructor for PlayerAI class that initialized the variables
      * stats set to false and last moves to an empty array.
      */
     public PlayerAI() {
         isRangeComputed = false;
+        analysisCache = AnalysisCache.fromProperties();
         lastMoves = new Direction[4];
+        jointMoveSearch = new JointMoveSearch();
+        jointMoveSearch.parallel = Boolean.getBoolean("ai.parallel");
+        jointMoveSearch.candidateLimit = Integer.getInteger("ai.candidates", 0);
+        checkCandidateLimit = Boolean.getBoolean("ai.candidates.check");
+        targetAssignment = new TargetAssignment();
+        scoring = new ScoringKernel();
+        exhaustiveSearchLimit = 4;
+        beamPlanner = new BeamPlanner(64);
+        beamPlanner.constraints.add(new CollisionConstraint());
+        beamPlanner.constraints.add(new UnityConstraint());
+        useAssignment = Boolean.getBoolean("ai.assignment");
+        assignmentPlanner = new AssignmentPlanner();
+        lookahead = Integer.getInteger("ai.lookahead", 1);
+        twoPlySearch = new TwoPlySearch();
+        twoPlySearch.optionLimit = Integer.getInteger("ai.lookahead.options",
+                twoPlySearch.optionLimit);
+        turnBudget = new TurnBudget(
+                Long.getLong("ai.turnBudgetMs", 500) * 1000000L);
+        profiler = new TurnProfiler("PlayerAI");
+        replayLog = ReplayLog.fromProperties();
     }
 
     /**
-     * The totalDistance method evaluates how separated the friendly units are
-     * by calculating the sum of their pairwise separations.
-     * @param world The state of the world, containing a pathfinding method.
-     * @param ps The set of points representing unit locations.
-     * @return The total pairwise distance between points by shortest paths.
+     * The getPathLength method looks up the length of the shortest path
+     * between two points in the precomputed distance table.
+     * @param world The state of the world, used if the table has no answer.
+     * @param a The start of the path.
+     * @param b The end of the path.
+     * @return The length of the shortest path between the two points.
      */
-    private int totalDistance(World world, Point... ps) {
-        int total = 0;
-        for (Point p1 : ps) {
-            for (Point p2 : ps) {
-                total += world.getPathLength(p1, p2);
-            }
+    private int getPathLength(World world, Point a, Point b) {
+        this.profiler.pathLengthQueries++;
+        if (this.distanceTable == null) {
+            return world.getPathLength(a, b);
+        }
+        return this.distanceTable.getPathLength(world, a, b);
+    }
+
+    /**
+     * The getPathLength method looks up the length of the shortest path
+     * between two passable tiles, given by their IDs in the distance table.
+     * @param world The state of the world, used if the table has no answer.
+     * @param a The ID of the start of the path.
+     * @param b The ID of the end of the path.
+     * @return The length of the shortest path between the two tiles.
+     */
+    private int getPathLength(World world, int a, int b) {
+        this.profiler.pathLengthQueries++;
+        return this.distanceTable.getPathLength(world, a, b);
+    }
+
+    /**
+     * The getPathLength method looks up the length of the shortest path from
+     * a tile to a pickup or control point in the target's distance field.
+     * @param world The state of the world, used if the field has no answer.
+     * @param x The x coordinate of the start of the path.
+     * @param y The y coordinate of the start of the path.
+     * @param field The distance field of the target.
+     * @param target The position of the target.
+     * @return The length of the shortest path from the tile to the target.
+     */
+    private int getPathLength(World world, int x, int y, DistanceField field,
+                              Point target) {
+        this.profiler.pathLengthQueries++;
+        int len = field.getDistance(x, y);
+        // As with the distance table, tiles that can't reach the target are
+        // rare enough to leave to the world.
+        if (len == DistanceField.UNREACHED) {
+            return world.getPathLength(new Point(x, y), target);
         }
-        return total / 2;
+        return len;
+    }
+
+    /**
+     * The checkShot method determines whether a friendly unit would deal
+     * damage by firing upon an enemy, counting the query.
+     * @param unit The friendly unit that would fire.
+     * @param target The enemy it would fire upon.
+     * @return Whether or not the shot would hit.
+     */
+    private boolean checkShot(FriendlyUnit unit, EnemyUnit target) {
+        this.profiler.shotChecks++;
+        return unit.checkShotAgainstEnemy(target) == ShotResult.CAN_HIT_ENEMY;
     }
 
     /**
@@ -90,64 +381,54 @@ public class PlayerAI {
             World world,
             EnemyUnit[] enemyUnits,
             FriendlyUnit[] friendlyUnits) {
-        // Iterate along the top row and the left column to determine the size
-        // of the world.
-        Point p = Point.origin();
-        int worldWidth = 0;
-        while (world.isWithinBounds(p)) {
-            p = p.add(new Point(0,1));
-            worldWidth++;
-        }
-        p = Point.origin();
-        int worldHeight = 0;
-        while (world.isWithinBounds(p)) {
-            p = p.add(new Point(1,0));
-            worldHeight++;
-        }
-
-        // Iterate over the entire board, and compute the maximum shootable
-        // distance for each direction. This is used to compute the maximum
-        // effective range, as discussed above. It computes the maximum
-        // distance by iteraing down the line of sight, checking for walls.
-        this.maximumEffectiveRange = 0;
-        for (int x = 0; x < worldWidth; x++) {
-            for (int y = 0; y < worldHeight; y++) {
-                Point start = new Point(x, y);
-                if (world.getTile(start) == TileType.WALL) {
-                    continue;
-                }
-                for (Direction d: Direction.values()) {
-                    if (d == Direction.NOWHERE) {
-                        continue;
-                    }
-                    int r = 0;
-                    Point target = d.movePoint(start);
-                    while (world.canShooterShootTarget(start, target, 10)) {
-                        target = d.movePoint(target);
-                        r++;
-                    }
-                    if (r > this.maximumEffectiveRange) {
-                        this.maximumEffectiveRange = r;
-                    }
-                    if (this.maximumEffectiveRange == 10) {
-                        break;
-                    }
-                }
-                if (this.maximumEffectiveRange == 10) {
-                    break;
-                }
-            }
-            if (this.maximumEffectiveRange == 10) {
-                break;
-            }
+        // Read the size of the world and where the walls are, and use that
+        // to compute the length of the shortest path between every pair of
+        // tiles.
+        MapGrid grid = MapGrid.read(world);
+        this.mapGrid = grid;
+        this.profiler.tileQueries += grid.width * grid.height;
+        this.featureFields = new DistanceFieldCache(grid);
+
+        // Compute how far one can see from every tile in every direction.
+        // The longest of these rays is the maximum effective range, as
+        // discussed above, since no gun has a range of more than 10.
+        // If this map was analysed in an earlier match, both tables are
+        // read back instead.
+        if (this.analysisCache != null && this.analysisCache.load(grid)) {
+            this.distanceTable =
+                    new DistanceTable(grid, this.analysisCache.distances);
+            this.lineOfSight = new LineOfSight(grid,
+                    this.analysisCache.rayLengths,
+                    this.analysisCache.maximumRayLength);
+        } else {
+            this.distanceTable = new DistanceTable(grid);
+            this.lineOfSight = new LineOfSight(grid);
+            this.buildDistanceTable();
         }
-        System.out.print("Maximum Effective Range: ");
-        System.out.println(this.maximumEffectiveRange);
+        this.maximumEffectiveRange =
+                Math.min(this.lineOfSight.maximumRayLength, 10);
+        this.threatMap = new ThreatMap(grid.width, grid.height);
+        this.enemyReach = new EnemyReach(grid, this.lineOfSight);
+        this.profiler.recordMap(grid.width, grid.height, grid.tileCount,
+                this.maximumEffectiveRange);
         // Indicate that the stats are set, and that we shouldn't run this
         // method anymore.
         this.isRangeComputed = true;
     }
 
+    /**
+     * Builds more of the distance table, until it is complete or this turn
+     * has used TABLE_BUILD_SHARE of its budget, and stores the analysis of
+     * the map in the cache once the table is complete.
+     */
+    private void buildDistanceTable() {
+        if (this.distanceTable.build(this.turnBudget, TABLE_BUILD_SHARE)
+                && this.analysisCache != null) {
+            this.analysisCache.store(this.mapGrid,
+                    this.distanceTable.distances, this.lineOfSight);
+        }
+    }
+
     /**
      * The isGun method determines whether a given item is one of the four guns
      * out of the six items that can be picked up.
@@ -222,51 +503,318 @@ public class PlayerAI {
      * @return The total separation between the friendly units.
      */
     private int unityFactor(World world, FriendlyUnit[] friendlyUnits) {
-        Direction[] directions = new Direction[4];
-        for (int i = 0; i < directions.length; i++) {
-            directions[i] = Direction.NOWHERE;
+        int total = 0;
+        int alive = 0;
+        for (int i = 0; i < friendlyUnits.length; i++) {
+            if (friendlyUnits[i].getHealth() == 0) {
+                continue;
+            }
+            alive++;
+            for (int j = 0; j < i; j++) {
+                if (friendlyUnits[j].getHealth() != 0) {
+                    total += this.getPathLength(world,
+                            friendlyUnits[i].getPosition(),
+                            friendlyUnits[j].getPosition());
+                }
+            }
+        }
+        // With fewer than two living units, there is no distance to speak of.
+        if (alive < 2) {
+            return 1;
         }
-        return this.unityFactor(world, friendlyUnits, directions);
+        return total;
     }
 
     /**
-     * The unityFactor of the friendly units after they have been moved by one
-     * tile in a given direction.
+     * Makes sure the scratch space used every turn fits the current number
+     * of units, pickups and control points, looks up the tiles the enemies
+     * stand on, and the distance fields of the pickups and control points.
      * @param world The world that the game is taking place in.
-     * @param friendlyUnits The friendly units whose separation is calculated.
-     * @param directions The directions in which all the units move.
-     * @return The total separation between the friendly units after a move.
+     * @param enemyUnits The array of enemy units.
+     * @param friendlyUnits The array of friendly units.
+     * @param pickups The pickups on the map this turn.
+     * @param controlPoints The control points on the map.
      */
-    private int unityFactor(World world, FriendlyUnit[] friendlyUnits,
-                            Direction[] directions) {
-        Point[] points = new Point[4];
-        int alive = 0;
-        for (int i = 0; i < 4; i++) {
-            if (friendlyUnits[i].getHealth() != 0) {
-                points[alive] = directions[i].movePoint(
-                        friendlyUnits[i].getPosition());
-                alive++;
+    private void prepareBuffers(World world, EnemyUnit[] enemyUnits,
+                                FriendlyUnit[] friendlyUnits,
+                                Pickup[] pickups,
+                                ControlPoint[] controlPoints) {
+        if (this.moved == null || this.moved.length != friendlyUnits.length) {
+            this.moved = new boolean[friendlyUnits.length];
+            this.targets = new EnemyUnit[friendlyUnits.length];
+            this.actionValue =
+                    new double[friendlyUnits.length][DIRECTIONS.length];
+            this.secondValues = new double[friendlyUnits.length][
+                    TwoPlySearch.WINDOW * TwoPlySearch.WINDOW];
+        }
+        if (this.enemyTiles == null
+                || this.enemyTiles.length != enemyUnits.length) {
+            this.enemyTiles = new int[enemyUnits.length];
+            this.enemyCoefficients = new int[enemyUnits.length];
+        }
+        if (this.pickupFields == null
+                || this.pickupFields.length != pickups.length) {
+            this.pickupFields = new DistanceField[pickups.length];
+        }
+        if (this.controlPointFields == null
+                || this.controlPointFields.length != controlPoints.length) {
+            this.controlPointFields = new DistanceField[controlPoints.length];
+        }
+        this.scoring.resize(friendlyUnits.length, pickups.length,
+                enemyUnits.length, controlPoints.length);
+        this.featureFields.beginTurn();
+        for (int k = 0; k < controlPoints.length; k++) {
+            Point p = controlPoints[k].getPosition();
+            this.controlPointFields[k] =
+                    this.featureFields.get(p.getX(), p.getY());
+        }
+        for (int k = 0; k < pickups.length; k++) {
+            Point p = pickups[k].getPosition();
+            this.pickupFields[k] = this.featureFields.get(p.getX(), p.getY());
+        }
+        for (int e = 0; e < enemyUnits.length; e++) {
+            this.enemyTiles[e] =
+                    this.mapGrid.getTileId(enemyUnits[e].getPosition());
+            // How dangerous an enemy is doesn't depend on where we move, so
+            // it is only worked out once per turn.
+            if (enemyUnits[e].getHealth() != 0) {
+                this.enemyCoefficients[e] = this.modifiedWeaponCoefficient(
+                        enemyUnits[e].getCurrentWeapon(), world,
+                        enemyUnits[e].getPosition());
             }
         }
-        switch(alive) {
-            case 0:
-            case 1: return 1;
-            case 2: return this.totalDistance(
-                        world,
-                        points[0],
-                        points[1]);
-            case 3: return this.totalDistance(
-                        world,
-                        points[0],
-                        points[1],
-                        points[2]);
-            case 4: return this.totalDistance(
-                        world,
-                        points[0],
-                        points[1],
-                        points[2],
-                        points[3]);
-            default: return -1;
+    }
+
+    /**
+     * The prepareScoring method works out, once per turn, how much every unit
+     * wants every pickup, enemy and control point before distance is taken
+     * into account, so that scoring a tile only needs the path lengths.
+     * @param enemyUnits The array of enemy units.
+     * @param friendlyUnits The array of friendly units.
+     * @param pickups The pickups on the map this turn.
+     * @param controlPoints The control points on the map.
+     * @param ourMainframes The number of mainframes we control.
+     * @param theirMainframes The number of mainframes the enemies control.
+     */
+    private void prepareScoring(EnemyUnit[] enemyUnits,
+                                FriendlyUnit[] friendlyUnits,
+                                Pickup[] pickups,
+                                ControlPoint[] controlPoints,
+                                int ourMainframes, int theirMainframes) {
+        ScoringKernel scoring = this.scoring;
+        int living = 0;
+        for (FriendlyUnit fu : friendlyUnits) {
+            if (fu.getHealth() > 0) {
+                living++;
+            }
+        }
+        scoring.enemyCount = 0;
+        for (int e = 0; e < enemyUnits.length; e++) {
+            // Ignore dead enemies.
+            if (enemyUnits[e].getHealth() != 0) {
+                scoring.enemyIndices[scoring.enemyCount++] = e;
+            }
+        }
+        for (int i = 0; i < friendlyUnits.length; i++) {
+            WeaponType myGun = friendlyUnits[i].getCurrentWeapon();
+            for (int k = 0; k < pickups.length; k++) {
+                double val = 1.0;
+                switch(pickups[k].getPickupType()) {
+                    // Shields are usually less useful than repair kits.
+                    // However, if we have several units dead, shields
+                    // become more useful. Thus, the value of a shield is
+                    // proportional to the value of a repair kit, divided
+                    // byt the number of players.
+                    case SHIELD:
+                        val *= 3;
+                        if (living != 0) {
+                            val /= living;
+                        }
+                        // Falls through...
+                    // The less health you have, the less you want a repair
+                    // kit. This function is designed to do that.
+                    case REPAIR_KIT:
+                        if (friendlyUnits[i].getHealth() == 0) {
+                            val = -15000000;
+                        } else {
+                            val *= 1000.0 / friendlyUnits[i].getHealth();
+                        }
+                        break;
+                    // For each weapon, the attractiveness is dependant on
+                    // how much better than our current weapon it is. If it
+                    // is worse than our current weapon, we don't care for
+                    // it.
+                    case WEAPON_LASER_RIFLE:
+                    case WEAPON_MINI_BLASTER:
+                    case WEAPON_SCATTER_GUN:
+                    case WEAPON_RAIL_GUN:
+                        val *= this.weaponCoefficient(
+                                this.pickToGun(pickups[k]))
+                                - this.weaponCoefficient(myGun);
+                        break;
+                }
+                scoring.pickupWeights[i][k] = val;
+            }
+            // If we have a better weapon than the enemy, we wish to fight
+            // them, but if they have a better weapon, then we don't.
+            // However, if we have balanced weapons, our behaviour is not so
+            // straight forward. We use a constant factor to indicate our
+            // willingness to fight. The greater this constant, the more a
+            // unit with equal weapons will wish to fight another.
+            for (int n = 0; n < scoring.enemyCount; n++) {
+                scoring.enemyWeights[i][n] =
+                        1.5 * this.weaponCoefficient(myGun)
+                        - this.enemyCoefficients[scoring.enemyIndices[n]];
+            }
+        }
+        for (int k = 0; k < controlPoints.length; k++) {
+            ControlPoint cp = controlPoints[k];
+            // If it is already held by us, we do not care for it, and would
+            // rather head elsewhere.
+            scoring.controlPointHeld[k] = enemyNumber(
+                    friendlyUnits[0].getTeam(),
+                    cp.getControllingTeam()) == 1;
+            // Mainframes are more desirable than control points, and even
+            // more so for shielded units. The fewer mainframes we have, the
+            // more of them we want, as a mainframe is a great advantage.
+            scoring.mainframeScales[k] = cp.isMainframe() ? 3 : 1;
+            scoring.shieldScales[k] = cp.isMainframe() ? 5 : 1;
+            scoring.mainframeDivisors[k] =
+                    cp.isMainframe() ? ourMainframes + 0.5 : 1;
+            // If our enemies are down to their last mainframe, we want to
+            // take it, as that would be a great advantage.
+            scoring.lastMainframeScales[k] = theirMainframes == 1 ? 2 : 1;
+        }
+    }
+
+    /**
+     * The locationValue method computes how good it would be for a unit to
+     * stand on a tile, based on the pickups, enemies and control points
+     * around it and the fire it would be walking into.
+     * @param world The world that the game is taking place in.
+     * @param enemyUnits The array of enemy units.
+     * @param friendlyUnits The array of friendly units.
+     * @param pickups The pickups on the map this turn.
+     * @param controlPoints The control points on the map.
+     * @param i The index of the unit.
+     * @param newX The x coordinate of the tile.
+     * @param newY The y coordinate of the tile.
+     * @param newStart The ID of the tile, which must not be a wall.
+     * @return The value of the tile to the unit.
+     */
+    private double locationValue(World world, EnemyUnit[] enemyUnits,
+                                 FriendlyUnit[] friendlyUnits,
+                                 Pickup[] pickups,
+                                 ControlPoint[] controlPoints, int i,
+                                 int newX, int newY, int newStart) {
+        double value = -15000000;
+        ScoringKernel scoring = this.scoring;
+        // Compute how good this location is with regards to each pickup,
+        // whose worth to this unit was worked out at the start of the turn.
+        // The further away a pickup is, the less desirable it is.
+        for (int k = 0; k < pickups.length; k++) {
+            scoring.pickupDistances[k] = this.getPathLength(world, newX, newY,
+                    this.pickupFields[k], pickups[k].getPosition());
+        }
+        value = scoring.pickupMaximum(i, value);
+        // Now, compute how good this location is with respect to enemy
+        // positioning. If you are shielded, enemies basically don't exist,
+        // barring a few really rare situations. Again, enemies further away
+        // are less desirable.
+        if (!(friendlyUnits[i].getShieldedTurnsRemaining() > 0)) {
+            for (int n = 0; n < scoring.enemyCount; n++) {
+                scoring.enemyDistances[n] = this.getPathLength(world,
+                        newStart, this.enemyTiles[scoring.enemyIndices[n]]);
+            }
+            value = scoring.enemyMaximum(i, value);
+        }
+        // Compute how good this location is with respect to control
+        // points, again less so the further away they are.
+        for (int k = 0; k < controlPoints.length; k++) {
+            scoring.controlPointDistances[k] = this.getPathLength(world,
+                    newX, newY, this.controlPointFields[k],
+                    controlPoints[k].getPosition());
+        }
+        value = scoring.controlPointMaximum(
+                friendlyUnits[i].getShieldedTurnsRemaining() > 0, value);
+        // Plan ahead for enemy shots. For every enemy unit, if we can
+        // hit them next turn from a given position, that position is
+        // more attractive, as we can deal damage. Thus, we account for
+        // that. This also leads to units surrounding enemy units, and
+        // enabling focus fire.
+        for (int e = 0; e < enemyUnits.length; e++) {
+            if (enemyUnits[e].getHealth() <= 0) {
+                continue;
+            }
+            this.profiler.lineOfSightQueries++;
+            if (this.lineOfSight.canShooterShootTarget(
+                    newX, newY,
+                    enemyUnits[e].getPosition().getX(),
+                    enemyUnits[e].getPosition().getY(),
+                    friendlyUnits[i].getCurrentWeapon()
+                            .getRange())) {
+                value = Math.max(value,
+                        100d / this.getPathLength(world, newStart,
+                                this.enemyTiles[e]));
+            }
+        }
+        // Finally, account for the fire we would be walking into. The
+        // larger the share of our health the enemies could take from
+        // this tile, the less attractive it is. The scalar factor is
+        // arbitrary, and sets how much our units shy away from fire.
+        // Shielded units needn't worry about this at all.
+        if (friendlyUnits[i].getShieldedTurnsRemaining() == 0) {
+            int incoming = this.threatMap.getExpectedDamage(newX, newY)
+                    * this.threatMap.getEnemyCount(newX, newY);
+            value -= 20d * Math.min(incoming,
+                    friendlyUnits[i].getHealth())
+                    / friendlyUnits[i].getHealth();
+            // The enemies may also step one tile to get a shot at us, so
+            // fire they could set up next turn counts too, if for less.
+            int nextTurn = this.enemyReach.getNextTurnDamage(newX, newY);
+            value -= NEXT_TURN_FIRE_WEIGHT * Math.min(nextTurn,
+                    friendlyUnits[i].getHealth())
+                    / friendlyUnits[i].getHealth();
+        }
+        return value;
+    }
+
+    /**
+     * The computeSecondValues method computes the value of every unit
+     * standing on every tile within two moves of where it is now, for
+     * looking two moves ahead. Units that have already been given an action
+     * this turn, or that ran out of time, may only stay where they are.
+     * @param world The world that the game is taking place in.
+     * @param enemyUnits The array of enemy units.
+     * @param friendlyUnits The array of friendly units.
+     * @param pickups The pickups on the map this turn.
+     * @param controlPoints The control points on the map.
+     */
+    private void computeSecondValues(World world, EnemyUnit[] enemyUnits,
+                                     FriendlyUnit[] friendlyUnits,
+                                     Pickup[] pickups,
+                                     ControlPoint[] controlPoints) {
+        int reach = TwoPlySearch.WINDOW / 2;
+        for (int i = 0; i < friendlyUnits.length; i++) {
+            int x = friendlyUnits[i].getPosition().getX();
+            int y = friendlyUnits[i].getPosition().getY();
+            for (int dx = -reach; dx <= reach; dx++) {
+                for (int dy = -reach; dy <= reach; dy++) {
+                    int k = (dx + reach) * TwoPlySearch.WINDOW + dy + reach;
+                    int tile = this.mapGrid.getTileId(x + dx, y + dy);
+                    // Each tile costs as much as one of this turn's moves,
+                    // and there are 25 per unit, so check every one.
+                    if (this.moved[i] || tile < 0
+                            || this.turnBudget.isExpired()) {
+                        this.secondValues[i][k] =
+                                dx == 0 && dy == 0 ? 0 : -15000000;
+                        continue;
+                    }
+                    this.secondValues[i][k] = this.locationValue(world,
+                            enemyUnits, friendlyUnits, pickups,
+                            controlPoints, i, x + dx, y + dy, tile);
+                }
+            }
         }
     }
 
@@ -274,44 +822,58 @@ public class PlayerAI {
      * This method will get called every turn.
      *
      * @param world The latest state of the world.
-     * @param enemyUnits An array of all 4 units on the enemy team.
+     * @param enemyUnits An array of all units on the enemy team.
      *  Their order won't change.
-     * @param friendlyUnits An array of all 4 units on your team.
+     * @param friendlyUnits An array of all units on your team.
      *  Their order won't change.
      */
     public void doMove(
             World world,
             EnemyUnit[] enemyUnits,
             FriendlyUnit[] friendlyUnits) {
+        this.turnBudget.start();
+        this.profiler.beginTurn();
         // If we haven't computed the statistics yet, remove it.
         if (!this.isRangeComputed) {
+            this.profiler.beginPhase(TurnProfiler.Phase.MAP_ANALYSIS);
             this.computeRange(world, enemyUnits, friendlyUnits);
+        } else if (!this.distanceTable.isComplete()) {
+            this.profiler.beginPhase(TurnProfiler.Phase.MAP_ANALYSIS);
+            this.buildDistanceTable();
         }
+        this.profiler.beginPhase(TurnProfiler.Phase.THREAT_MAP);
+        if (this.lastMoves.length != friendlyUnits.length) {
+            this.lastMoves = new Direction[friendlyUnits.length];
+        }
+        Pickup[] pickups = world.getPickups();
+        ControlPoint[] controlPoints = world.getControlPoints();
+        this.prepareBuffers(world, enemyUnits, friendlyUnits, pickups,
+                controlPoints);
+        // Work out which tiles the enemies can shoot this turn, and how hard.
+        this.threatMap.update(this.lineOfSight, enemyUnits);
+        this.enemyReach.update(enemyUnits);
         // Indicates whether or not a given unit has already moved. We use this
         // to avoid overriding instructions we passed already.
-        boolean[] moved = new boolean[4];
+        boolean[] moved = this.moved;
         // Dead units should not get instructions.
-        for (int i = 0; i < 4; i++) {
+        for (int i = 0; i < friendlyUnits.length; i++) {
             moved[i] = friendlyUnits[i].getHealth() == 0;
         }
+        this.profiler.beginPhase(TurnProfiler.Phase.SHIELDS_AND_PICKUPS);
         // For each unit, do the following...
-        for (int i = 0; i < 4; i++) {
+        for (int i = 0; i < friendlyUnits.length; i++) {
+            if (this.turnBudget.isExpired()) {
+                break;
+            }
             if (moved[i]) {
                 continue;
             }
-            int totalDamage = 0;
-            int enemyNum = 0;
-            // Compute the total amount of damage the given unit might receive
+            // Look up the total amount of damage the given unit might receive
             // this turn.
-            for (EnemyUnit e: enemyUnits) {
-                if (e.getHealth() > 0 && world.canShooterShootTarget(
-                    e.getPosition(),
-                    friendlyUnits[i].getPosition(),
-                    e.getCurrentWeapon().getRange())) {
-                    totalDamage += e.getCurrentWeapon().getDamage();
-                    enemyNum++;
-                }
-            }
+            int totalDamage = this.threatMap.getExpectedDamage(
+                    friendlyUnits[i].getPosition());
+            int enemyNum = this.threatMap.getEnemyCount(
+                    friendlyUnits[i].getPosition());
             // If this unit might die this turn, and it has a shield, activate
             // it.
             if (totalDamage * enemyNum >= friendlyUnits[i].getHealth()
@@ -338,129 +900,70 @@ public class PlayerAI {
                 }
             }
         }
-        // Select targets to fire upon, if possible.
-        EnemyUnit[] targets = new EnemyUnit[4];
-        double maximumScore = 0;
-        // Consider all possible ways to choosing targets by each friendly
-        // unit, with special consideration for some factors.
-        for (int t0 = 0; t0 < 4; t0++) {
-            if (enemyUnits[t0].getHealth() == 0
-                    || enemyUnits[t0].getShieldedTurnsRemaining() > 0) {
-                continue;
+        this.profiler.beginPhase(TurnProfiler.Phase.TARGETING);
+        // Select targets to fire upon, if possible. For each friendly unit
+        // and each enemy, work out whether the friendly unit would deal any
+        // damage by firing upon that enemy, and use that to find the best way
+        // of choosing targets, with special consideration for some factors.
+        // If we are already out of time, we hold our fire instead.
+        EnemyUnit[] targets = this.targets;
+        java.util.Arrays.fill(targets, null);
+        if (!this.turnBudget.isExpired()) {
+            TargetAssignment targeting = this.targetAssignment;
+            targeting.friendlyCount = friendlyUnits.length;
+            targeting.enemyCount = enemyUnits.length;
+            if (targeting.damage == null
+                    || targeting.damage.length != friendlyUnits.length
+                    || targeting.health.length != enemyUnits.length) {
+                targeting.targetable = new boolean[enemyUnits.length];
+                targeting.canHit =
+                        new boolean[friendlyUnits.length][enemyUnits.length];
+                targeting.damage = new int[friendlyUnits.length];
+                targeting.health = new int[enemyUnits.length];
             }
-            for (int t1 = 0; t1 < 4; t1++) {
-                if (enemyUnits[t1].getHealth() == 0
-                        || enemyUnits[t1].getShieldedTurnsRemaining() > 0) {
-                    continue;
+            for (int e = 0; e < enemyUnits.length; e++) {
+                targeting.health[e] = enemyUnits[e].getHealth();
+                targeting.targetable[e] = enemyUnits[e].getHealth() != 0
+                        && enemyUnits[e].getShieldedTurnsRemaining() == 0;
+            }
+            for (int i = 0; i < friendlyUnits.length; i++) {
+                targeting.damage[i] = friendlyUnits[i].getCurrentWeapon()
+                        .getDamage();
+                for (int e = 0; e < enemyUnits.length; e++) {
+                    targeting.canHit[i][e] = targeting.targetable[e]
+                            && friendlyUnits[i].getShieldedTurnsRemaining()
+                            == 0
+                            && this.checkShot(friendlyUnits[i],
+                            enemyUnits[e]);
                 }
-                for (int t2 = 0; t2 < 4; t2++) {
-                    if (enemyUnits[t2].getHealth() == 0
-                            || enemyUnits[t2].getShieldedTurnsRemaining() > 0) {
-                        continue;
-                    }
-                    for (int t3 = 0; t3 < 4; t3++) {
-                        if (enemyUnits[t3].getHealth() == 0
-                                || enemyUnits[t3].getShieldedTurnsRemaining()
-                                > 0) {
-                            continue;
-                        }
-                        // For each such combination of targets, calculate the
-                        // amount of damage dealt to each enemy target, if we
-                        // can hit them.
-                        int[] damages = new int[4];
-                        int[] shooters = new int[4];
-                        for (int i = 0; i < 4; i++) {
-                            damages[i] = 0;
-                            shooters[i] = 0;
-                        }
-                        if (friendlyUnits[0].checkShotAgainstEnemy(
-                                enemyUnits[t0]) == ShotResult.CAN_HIT_ENEMY
-                                && friendlyUnits[0].getShieldedTurnsRemaining()
-                                == 0) {
-                            damages[t0] += friendlyUnits[0].getCurrentWeapon()
-                                    .getDamage();
-                            shooters[t0]++;
-                        }
-                        if (friendlyUnits[1].checkShotAgainstEnemy(
-                                enemyUnits[t1]) == ShotResult.CAN_HIT_ENEMY
-                                && friendlyUnits[1].getShieldedTurnsRemaining()
-                                == 0) {
-                            damages[t1] += friendlyUnits[1].getCurrentWeapon()
-                                    .getDamage();
-                            shooters[t1]++;
-                        }
-                        if (friendlyUnits[2].checkShotAgainstEnemy(
-                                enemyUnits[t2]) == ShotResult.CAN_HIT_ENEMY
-                                && friendlyUnits[2].getShieldedTurnsRemaining()
-                                == 0) {
-                            damages[t2] += friendlyUnits[2].getCurrentWeapon()
-                                    .getDamage();
-                            shooters[t2]++;
-                        }
-                        if (friendlyUnits[3].checkShotAgainstEnemy(
-                                enemyUnits[t3]) == ShotResult.CAN_HIT_ENEMY
-                                && friendlyUnits[3].getShieldedTurnsRemaining()
-                                == 0) {
-                            damages[t3] += friendlyUnits[3].getCurrentWeapon()
-                                    .getDamage();
-                            shooters[t3]++;
-                        }
-                        // The score is an attractiveness rating of this given
-                        // attack pattern. The less health the opponent has,
-                        // the more we want to shoot them. The more damage we
-                        // deal, the better the attack pattern. Then, maximize
-                        // this score over attack patterns.
-                        double score = 0.0;
-                        if (enemyUnits[0].getHealth() > 0) {
-                            score += (1d * Math.min(damages[0] * shooters[0],
-                                enemyUnits[0].getHealth()))
-                                / enemyUnits[0].getHealth();
-                        }
-                        if (enemyUnits[1].getHealth() > 0) {
-                        score += (1d * Math.min(damages[1] * shooters[1],
-                                enemyUnits[1].getHealth()))
-                                / enemyUnits[1].getHealth();
-                        }
-                        if (enemyUnits[2].getHealth() > 0) {
-                        score += (1d * Math.min(damages[2] * shooters[2],
-                                enemyUnits[2].getHealth()))
-                                / enemyUnits[2].getHealth();
-                        }
-                        if (enemyUnits[3].getHealth() > 0) {
-                        score += (1d * Math.min(damages[3] * shooters[3],
-                                enemyUnits[3].getHealth()))
-                                / enemyUnits[3].getHealth();
-                        }
-                        if (score > maximumScore) {
-                            targets[0] = enemyUnits[t0];
-                            targets[1] = enemyUnits[t1];
-                            targets[2] = enemyUnits[t2];
-                            targets[3] = enemyUnits[t3];
-                            maximumScore = score;
-                        }
-                    }
+            }
+            targeting.solve();
+            this.profiler.recordTargetAssignment(targeting.solveNanos);
+            for (int i = 0; i < friendlyUnits.length; i++) {
+                if (targeting.assignment[i] >= 0) {
+                    targets[i] = enemyUnits[targeting.assignment[i]];
                 }
             }
         }
         // After having determined the best attack combination, execute that
         // attack pattern.
-        for (int i = 0; i < 4; i++) {
+        for (int i = 0; i < friendlyUnits.length; i++) {
             if (moved[i]) {
                 continue;
             }
             if (targets[i] != null) {
-                if (friendlyUnits[i].checkShotAgainstEnemy(targets[i]) ==
-                        ShotResult.CAN_HIT_ENEMY) {
+                if (this.checkShot(friendlyUnits[i], targets[i])) {
                     friendlyUnits[i].shootAt(targets[i]);
                     moved[i] = true;
                 }
             }
         }
+        this.profiler.beginPhase(TurnProfiler.Phase.ACTION_VALUES);
         // Compute the number of mainframes we control and the number of
         // mainframes our enemies control.
         int ourMainframes = 0;
         int theirMainframes = 0;
-        for (ControlPoint cp : world.getControlPoints()) {
+        for (ControlPoint cp : controlPoints) {
             if (cp.isMainframe()
                     && enemyNumber(friendlyUnits[0].getTeam(),
                     cp.getControllingTeam()) == 1) {
@@ -472,20 +975,25 @@ public class PlayerAI {
                 theirMainframes++;
             }
         }
+        this.prepareScoring(enemyUnits, friendlyUnits, pickups, controlPoints,
+                ourMainframes, theirMainframes);
         // We now compute the action value of all possible moves. For each
         // friendly unit, and for each direction they might move in, we
         // compute the value of that position. This is a complicated function
         // of a number of a things, including pickups, enemies, control points
         // and more.
-        double[][] actionValue =
-            new double[friendlyUnits.length][Direction.values().length];
+        double[][] actionValue = this.actionValue;
         for (int i = 0; i < friendlyUnits.length; i++) {
-            for (int j = 0; j < Direction.values().length; j++) {
+            // If we are out of time, the remaining units stay where they are.
+            boolean outOfTime = this.turnBudget.isExpired();
+            int x = friendlyUnits[i].getPosition().getX();
+            int y = friendlyUnits[i].getPosition().getY();
+            for (int j = 0; j < DIRECTIONS.length; j++) {
                 actionValue[i][j] = -15000000;
                 // If we have already decided on an action, then we aren't
                 // moving anywhere anyway.
-                if (moved[i]) {
-                    if (Direction.values()[j] == Direction.NOWHERE) {
+                if (moved[i] || outOfTime) {
+                    if (DIRECTIONS[j] == Direction.NOWHERE) {
                         actionValue[i][j] = 0;
                     }
                     continue;
@@ -493,312 +1001,217 @@ public class PlayerAI {
                 // Compute the new location we would move to, if we were to
                 // move in the given direction, and cancel if we would walk
                 // into a wall.
-                Point newStart = Direction.values()[j].movePoint(
-                        friendlyUnits[i].getPosition());
-                if (world.getTile(newStart) == TileType.WALL) {
+                int newX = x + DIRECTION_X[j];
+                int newY = y + DIRECTION_Y[j];
+                int newStart = this.mapGrid.getTileId(newX, newY);
+                if (newStart < 0) {
                     continue;
                 }
-                // Compute how good this location is with regards to each
-                // pickup. The exact function differs for each pickup type.
-                for (Pickup p: world.getPickups()) {
-                    double val = 1.0;
-                    switch(p.getPickupType()) {
-                        // Shields are usually less useful than repair kits.
-                        // However, if we have several units dead, shields
-                        // become more useful. Thus, the value of a shield is
-                        // proportional to the value of a repair kit, divided
-                        // byt the number of players.
-                        case SHIELD:
-                            val *= 3;
-                            int playnum = 0;
-                            for (FriendlyUnit fu : friendlyUnits) {
-                                if (fu.getHealth() > 0) {
-                                    playnum++;
-                                }
-                            }
-                            if (playnum != 0) {
-                                val /= playnum;
-                            }
-                            // Falls through...
-                        // The less health you have, the less you want a repair
-                        // kit. This function is designed to do that.
-                        case REPAIR_KIT:
-                            if (friendlyUnits[i].getHealth() == 0) {
-                                val = -15000000;
-                            } else {
-                                val *= 1000.0
-                                        / friendlyUnits[i].getHealth();
-                            }
-                            break;
-                        // For each weapon, the attractiveness is dependant on
-                        // how much better than our current weapon it is. If it
-                        // is worse than our current weapon, we don't care for
-                        // it.
-                        case WEAPON_LASER_RIFLE:
-                        case WEAPON_MINI_BLASTER:
-                        case WEAPON_SCATTER_GUN:
-                        case WEAPON_RAIL_GUN:
-                            WeaponType otherGun = this.pickToGun(p);
-                            WeaponType myGun =
-                                    friendlyUnits[i].getCurrentWeapon();
-                            val *= this.weaponCoefficient(otherGun)
-                                    - this.weaponCoefficient(myGun);
-                            break;
-                    }
-                    // After computing the individual value of a pickup, we
-                    // compute how far away it is. The further away a pickup
-                    // is, the less desirable it is, so we divide by path
-                    // length.
-                    int len = world.getPathLength(
-                            newStart,
-                            p.getPosition());
-                    if (len != 0) {
-                        val /= len + 1;
-                    }
-                    // Find the maximum value of all pickups. Store that as the
-                    // action value of this direction for this player, for now.
-                    if (val >= actionValue[i][j]) {
-                        actionValue[i][j] = val;
-                    }
-                }
-                // Now, compute how good this location is with respect to
-                // enemy positioning. If you are shielded, enemies basically
-                // don't exist, barring a few really rare situations.
-                if (!(friendlyUnits[i].getShieldedTurnsRemaining() > 0)) {
-                    for (EnemyUnit e : enemyUnits) {
-                        // Ignore dead enemies.
-                        if (e.getHealth() == 0) {
-                            continue;
-                        }
-                        // If we have a better weapon than the enemy, we wish
-                        // to fight them, but if they have a better weapon,
-                        // then we don't. However, if we have balanced weapons,
-                        // our behaviour is not so straight forward. We use a
-                        // constant factor to indicate our willingness to fight.
-                        // The greater this constant, the more a unit with equal
-                        // weapons will wish to fight another.
-                        double val =
-                            1.5 * this.weaponCoefficient(
-                                    friendlyUnits[i].getCurrentWeapon()) -
-                            this.modifiedWeaponCoefficient(e.getCurrentWeapon(),
-                                    world, e.getPosition());
-                        // Once again, enemies further away are less desirable.
-                        int len = world.getPathLength(newStart,
-                                e.getPosition());
-                        val /= len + 1;
-                        // Arbitrary scalar factor to increase desire to target
-                        // enemy units.
-                        val *= 5;
-                        // Find the maximum action value among all enemies.
-                        // Store that as the action value of this direction
-                        // for this player, if it is larger.
-                        if (val >= actionValue[i][j]) {
-                            actionValue[i][j] = val;
-                        }
-                    }
-                }
-                // Compute how good this location is with respect to control
-                // points.
-                for (ControlPoint cp : world.getControlPoints()) {
-                    double val = 50;
-                    // The further away a point is, the less useful it is.
-                    int len = world.getPathLength(newStart,
-                            cp.getPosition());
-                    if (len != 0) {
-                        val /= len;
-                    }
-                    // If it is already held by us, we do not care for it, and
-                    // would rather head elsewhere.
-                    if (enemyNumber(friendlyUnits[i].getTeam(),
-                            cp.getControllingTeam()) == 1) {
-                        val = -15000000;
-                    }
-                    // Mainframes are more desirable than control points. The
-                    // fewer mainframes we have, the more of them we want, as
-                    // a mainframe is a great advantage.
-                    if (cp.isMainframe()) {
-                        val *= 3;
-                        // If we're shielded, run for a mainframe.
-                        if (friendlyUnits[i].getShieldedTurnsRemaining() > 0) {
-                            val *= 5;
-                        }
-                        val /= (ourMainframes + 0.5);
-                    }
-                    // If our enemies are down to their last mainframe, we want
-                    // to take it, as that would be a great advantage.
-                    if (theirMainframes == 1) {
-                        val *= 2;
-                    }
-                    // As always, store the maximum action value.
-                    if (val >= actionValue[i][j]) {
-                        actionValue[i][j] = val;
-                    }
-                }
-                // Plan ahead for enemy shots. For every enemy unit, if we can
-                // hit them next turn from a given position, that position is
-                // more attractive, as we can deal damage. Thus, we account for
-                // that. This also leads to units surrounding enemy units, and
-                // enabling focus fire.
-                for (EnemyUnit enemyUnit : enemyUnits) {
-                    if (enemyUnit.getHealth() > 0
-                            && world.canShooterShootTarget(
-                            Direction.values()[j].movePoint(
-                                    friendlyUnits[i].getPosition()),
-                            enemyUnit.getPosition(),
-                            friendlyUnits[i].getCurrentWeapon()
-                                    .getRange())) {
-                        actionValue[i][j] = Math.max(actionValue[i][j],
-                                100d / world.getPathLength(
-                                        Direction.values()[j].movePoint(
-                                                friendlyUnits[i].getPosition()),
-                                        enemyUnit.getPosition()));
-                    }
-                }
+                actionValue[i][j] = this.locationValue(world, enemyUnits,
+                        friendlyUnits, pickups, controlPoints, i, newX, newY,
+                        newStart);
             }
         }
+        // When looking two moves ahead, also compute the value of every tile
+        // each unit could reach in two moves, assuming nothing else changes
+        // in between.
+        boolean twoPly = this.lookahead >= 2
+                && friendlyUnits.length <= this.exhaustiveSearchLimit;
+        if (twoPly) {
+            this.computeSecondValues(world, enemyUnits, friendlyUnits,
+                    pickups, controlPoints);
+        }
         // Compute the minimum distance between any enemy unit and any friendly
         // unit. This is used later on.
         int minDistance = Integer.MAX_VALUE;
-        for (int i = 0; i < 4; i++) {
+        for (int i = 0; i < friendlyUnits.length; i++) {
             if (friendlyUnits[i].getHealth() == 0) {
                 continue;
             }
-            for (int j = 0; j < 4; j++) {
+            for (int j = 0; j < enemyUnits.length; j++) {
                 if (enemyUnits[j].getHealth() == 0) {
                     continue;
                 }
-                minDistance = Math.min(minDistance, world.getPathLength(
+                minDistance = Math.min(minDistance, this.getPathLength(
+                        world,
                         friendlyUnits[i].getPosition(),
                         enemyUnits[j].getPosition()));
             }
         }
+        this.profiler.beginPhase(TurnProfiler.Phase.JOINT_SEARCH);
         // Compute the best move, based on action values we computed earlier.
-        int[] optimalDirections = new int[4];
-        double maximumGoodness = Double.MIN_VALUE;
         // The unity factor is how close our units are together. A greater
         // unity factor indicates more clustered units, which is more useful
         // in a firefight, as it enables focus fire.
-        int currentUnity = this.unityFactor(world, friendlyUnits);
-        // For each possible combination of directions people our units can
-        // walk, do the following.
-        for (int d0 = 0; d0 < Direction.values().length; d0++) {
-            // Units can't walk into walls. Discard this move.
-            Point new0 = Direction.values()[d0].movePoint(
-                    friendlyUnits[0].getPosition());
-            if (world.getTile(new0) == TileType.WALL) {
-                continue;
-            }
+        JointMoveSearch search = this.jointMoveSearch;
+        search.units = friendlyUnits.length;
+        search.directionCount = DIRECTIONS.length;
+        search.actionValue = actionValue;
+        if (search.alive == null
+                || search.alive.length != friendlyUnits.length) {
+            search.tiles = new int[friendlyUnits.length][DIRECTIONS.length];
+            search.alive = new boolean[friendlyUnits.length];
+            search.lastMoveFailed = new boolean[friendlyUnits.length];
+        }
+        search.nowhere = Direction.NOWHERE.ordinal();
+        search.currentUnity = this.unityFactor(world, friendlyUnits);
+        search.exponent = 1d / minDistance;
+        search.world = world;
+        search.distanceTable = this.distanceTable;
+        for (int i = 0; i < friendlyUnits.length; i++) {
+            search.alive[i] = friendlyUnits[i].getHealth() != 0;
             // If we tried to the same move last turn, and it failed, discard
             // this move. This is to prevent traffic jams, where our units line
             // up because two units keep trying to enter the same space.
-            boolean lastMoveFailed0 = (
-                    !friendlyUnits[0].didLastActionSucceed() &&
-                    friendlyUnits[0].getLastMoveResult()
+            search.lastMoveFailed[i] = (
+                    !friendlyUnits[i].didLastActionSucceed() &&
+                    friendlyUnits[i].getLastMoveResult()
                             == MoveResult.BLOCKED_BY_ENEMY);
-            if (this.lastMoves[0] == Direction.values()[d0]
-                    && lastMoveFailed0) {
-                continue;
-            }
-            // Repeat this for every unit.
-            for (int d1 = 0; d1 < Direction.values().length; d1++) {
-                Point new1 = Direction.values()[d1].movePoint(
-                        friendlyUnits[1].getPosition());
-                if (world.getTile(new1) == TileType.WALL
-                        || (friendlyUnits[1].getHealth() > 0
-                        && new1.equals(new0))) {
-                    continue;
-                }
-                boolean lastMoveFailed1 = (
-                        !friendlyUnits[1].didLastActionSucceed() &&
-                        friendlyUnits[1].getLastMoveResult()
-                                == MoveResult.BLOCKED_BY_ENEMY);
-                if (this.lastMoves[1] == Direction.values()[d1]
-                        && lastMoveFailed1) {
-                    continue;
-                }
-                for (int d2 = 0; d2 < Direction.values().length; d2++) {
-                    Point new2 = Direction.values()[d2].movePoint(
-                            friendlyUnits[2].getPosition());
-                    if (world.getTile(new2) == TileType.WALL
-                            || (friendlyUnits[2].getHealth() > 0
-                            && (new2.equals(new0) || new2.equals(new1)))) {
-                        continue;
-                    }
-                    boolean lastMoveFailed2 = (
-                            !friendlyUnits[2].didLastActionSucceed() &&
-                            friendlyUnits[2].getLastMoveResult()
-                                    == MoveResult.BLOCKED_BY_ENEMY);
-                    if (this.lastMoves[2] == Direction.values()[d2]
-                            && lastMoveFailed2) {
-                        continue;
-                    }
-                    for (int d3 = 0; d3 < Direction.values().length; d3++) {
-                        Point new3 = Direction.values()[d3].movePoint(
-                                friendlyUnits[3].getPosition());
-                        if (world.getTile(new3) == TileType.WALL
-                                || (friendlyUnits[3].getHealth() > 0
-                                && (new3.equals(new0) || new3.equals(new1)
-                                || new3.equals(new2)))) {
-                            continue;
-                        }
-                        boolean lastMoveFailed3 = (
-                                !friendlyUnits[3].didLastActionSucceed() &&
-                                friendlyUnits[3].getLastMoveResult()
-                                        == MoveResult.BLOCKED_BY_ENEMY);
-                        if (this.lastMoves[3] == Direction.values()[d3]
-                                && lastMoveFailed3) {
-                            continue;
-                        }
-                        // Compute the unity factor after we have moved our
-                        // units.
-                        Direction[] directions = new Direction[4];
-                        directions[0] = Direction.values()[d0];
-                        directions[1] = Direction.values()[d1];
-                        directions[2] = Direction.values()[d2];
-                        directions[3] = Direction.values()[d3];
-                        int resultingUnity = this.unityFactor(world,
-                                friendlyUnits, directions);
-                        // Compute the total action value due to these moves.
-                        // It is the sum of the action values of the individual
-                        // moves, with consideration for the fact that idling is
-                        // discouraged.
-                        double curActionValue = 0;
-                        curActionValue += actionValue[0][d0]
-                                * (Direction.values()[d0] == Direction.NOWHERE
-                                && lastMoveFailed0 ? 0.5 : 1);
-                        curActionValue += actionValue[1][d1]
-                                * (Direction.values()[d0] == Direction.NOWHERE
-                                && lastMoveFailed1 ? 0.5 : 1);
-                        curActionValue += actionValue[2][d2]
-                                * (Direction.values()[d0] == Direction.NOWHERE
-                                && lastMoveFailed2 ? 0.5 : 1);
-                        curActionValue += actionValue[3][d3]
-                                * (Direction.values()[d0] == Direction.NOWHERE
-                                && lastMoveFailed3 ? 0.5 : 1);
-                        curActionValue *= Math.pow(1d * currentUnity
-                                / resultingUnity, 1d / minDistance);
-                        // Maximize the total action value.
-                        if (curActionValue > maximumGoodness) {
-                            maximumGoodness = curActionValue;
-                            optimalDirections[0] = d0;
-                            optimalDirections[1] = d1;
-                            optimalDirections[2] = d2;
-                            optimalDirections[3] = d3;
-                        }
-                    }
+            int x = friendlyUnits[i].getPosition().getX();
+            int y = friendlyUnits[i].getPosition().getY();
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                // Units can't walk into walls. Discard this move.
+                int newPosition = this.mapGrid.getTileId(
+                        x + DIRECTION_X[d], y + DIRECTION_Y[d]);
+                if (this.lastMoves[i] == DIRECTIONS[d]
+                        && search.lastMoveFailed[i]) {
+                    newPosition = -1;
                 }
+                search.tiles[i][d] = newPosition;
             }
         }
+        // Search through every possible combination of directions our units
+        // can walk, and maximize the total action value, scaled by how much
+        // closer together the units end up. For teams too large to try every
+        // combination, plan one unit at a time instead.
+        int[] optimalDirections;
+        search.budget = this.turnBudget;
+        this.beamPlanner.budget = this.turnBudget;
+        this.twoPlySearch.budget = this.turnBudget;
+        this.assignmentPlanner.budget = this.turnBudget;
+        boolean checkCandidates = this.checkCandidateLimit
+                && search.candidateLimit > 0
+                && friendlyUnits.length <= this.exhaustiveSearchLimit;
+        if (checkCandidates) {
+            // Find what a search of every direction would choose, before the
+            // search below reuses its result.
+            int limit = search.candidateLimit;
+            search.candidateLimit = 0;
+            search.search();
+            search.candidateLimit = limit;
+            if (this.fullDirections == null
+                    || this.fullDirections.length != friendlyUnits.length) {
+                this.fullDirections = new int[friendlyUnits.length];
+            }
+            System.arraycopy(search.bestDirections, 0, this.fullDirections, 0,
+                    friendlyUnits.length);
+        }
+        if (twoPly) {
+            // The best single move is where the two move search starts.
+            search.search();
+            TwoPlySearch planner = this.twoPlySearch;
+            planner.grid = this.mapGrid;
+            planner.secondValues = this.secondValues;
+            planner.plan(search);
+            optimalDirections = planner.bestDirections;
+            this.profiler.pathLengthQueries += planner.distanceQueries;
+        } else if (this.useAssignment) {
+            this.assignmentPlanner.plan(search);
+            optimalDirections = this.assignmentPlanner.bestDirections;
+        } else if (friendlyUnits.length <= this.exhaustiveSearchLimit) {
+            search.search();
+            optimalDirections = search.bestDirections;
+        } else {
+            this.beamPlanner.plan(search);
+            optimalDirections = this.beamPlanner.bestDirections;
+        }
+        this.profiler.pathLengthQueries += search.distanceQueries;
+        this.profiler.nodesExpanded += search.nodesExpanded;
+        this.profiler.nodesPruned += search.nodesPruned;
+        if (checkCandidates) {
+            boolean differs = false;
+            for (int i = 0; i < friendlyUnits.length; i++) {
+                differs |= !moved[i]
+                        && optimalDirections[i] != this.fullDirections[i];
+            }
+            this.profiler.recordCandidateCheck(differs);
+        }
+        this.profiler.beginPhase(TurnProfiler.Phase.MOVES);
         // Move all units to what we have decided to be the best move, and
         // store what moves we chose to perform.
-        for (int i = 0; i < 4; i++) {
+        for (int i = 0; i < friendlyUnits.length; i++) {
             if (!moved[i]) {
-                friendlyUnits[i].move(
-                        Direction.values()[optimalDirections[i]]);
-                lastMoves[i] = Direction.values()[optimalDirections[i]];
+                friendlyUnits[i].move(DIRECTIONS[optimalDirections[i]]);
+                lastMoves[i] = DIRECTIONS[optimalDirections[i]];
             } else {
                 lastMoves[i] = null;
             }
         }
+        this.lastTurnNanos = this.turnBudget.getElapsedNanos();
+        this.lastTurnOverBudget = this.turnBudget.isExpired();
+        this.profiler.endTurn();
+        if (this.replayLog != null) {
+            this.logTurn(enemyUnits, friendlyUnits);
+        }
+    }
+
+    /**
+     * The logTurn method writes a record of the turn that just ended to the
+     * replay log. Writing the file is left to the log's own thread, so this
+     * only fills a buffer. The record holds, in order:
+     *
+     * the turn number as an int, how long the turn took in nanoseconds as a
+     * long, the number of phases as a byte followed by the nanoseconds spent
+     * in each as longs, the number of nodes the joint move search expanded
+     * and pruned as longs, and the number of our units and of directions as
+     * bytes. Then, for every unit: its x and y coordinates and health as
+     * shorts; its weapon, number of shields, shielded turns remaining, the
+     * direction it moved in and the enemy it was assigned to fire upon as
+     * bytes, with -1 for none; and its action value for every direction as
+     * floats.
+     * @param enemyUnits The array of enemy units.
+     * @param friendlyUnits The array of friendly units.
+     */
+    private void logTurn(EnemyUnit[] enemyUnits,
+                         FriendlyUnit[] friendlyUnits) {
+        long[] phases = this.profiler.turnPhaseNanos;
+        ByteBuffer record = this.replayLog.begin(31 + 8 * phases.length
+                + friendlyUnits.length * (11 + 4 * DIRECTIONS.length));
+        if (record == null) {
+            return;
+        }
+        record.putInt(this.profiler.turn);
+        record.putLong(this.lastTurnNanos);
+        record.put((byte) phases.length);
+        for (long nanos : phases) {
+            record.putLong(nanos);
+        }
+        record.putLong(this.profiler.nodesExpanded);
+        record.putLong(this.profiler.nodesPruned);
+        record.put((byte) friendlyUnits.length);
+        record.put((byte) DIRECTIONS.length);
+        for (int i = 0; i < friendlyUnits.length; i++) {
+            FriendlyUnit unit = friendlyUnits[i];
+            record.putShort((short) unit.getPosition().getX());
+            record.putShort((short) unit.getPosition().getY());
+            record.putShort((short) unit.getHealth());
+            WeaponType weapon = unit.getCurrentWeapon();
+            record.put((byte) (weapon == null ? -1 : weapon.ordinal()));
+            record.put((byte) unit.getNumShields());
+            record.put((byte) unit.getShieldedTurnsRemaining());
+            record.put((byte) (this.lastMoves[i] == null ? -1
+                    : this.lastMoves[i].ordinal()));
+            int target = -1;
+            for (int e = 0; e < enemyUnits.length; e++) {
+                if (this.targets[i] == enemyUnits[e]) {
+                    target = e;
+                }
+            }
+            record.put((byte) target);
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                record.putFloat((float) this.actionValue[i][d]);
+            }
+        }
+        this.replayLog.finish();
     }
 }
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class ReplayLog {
+    /**
+     * The first four bytes of every replay file, and the version of the
+     * layout below.
+     */
+    static final int MAGIC = 0x43545a52;
+    static final int VERSION = 1;
+
+    /**
+     * The number of records that may wait to be written at once. A turn that
+     * finds every buffer waiting drops its record rather than wait for the
+     * writer.
+     */
+    static final int BUFFERS = 256;
+
+    /**
+     * The size a record buffer starts at. Buffers too small for a record are
+     * replaced by one twice as large.
+     */
+    static final int INITIAL_BUFFER_BYTES = 1024;
+
+    /**
+     * Numbers the files written by this program, so that several AIs can log
+     * into the same folder.
+     */
+    private static final AtomicInteger FILES = new AtomicInteger();
+
+    /**
+     * How long the writer waits between writes, in nanoseconds.
+     */
+    static final long FLUSH_NANOS = 10000000L;
+
+    /**
+     * The file the records are written to.
+     */
+    final Path file;
+
+    /**
+     * The number of records dropped because the writer fell behind, the
+     * number written so far, and the number lost because the file couldn't
+     * be written. The first is only counted by the AI's thread, and the
+     * others only by the writer.
+     */
+    volatile long recordsDropped;
+    volatile long recordsWritten;
+    volatile long recordsFailed;
+
+    /**
+     * The buffers free to fill, and those filled and waiting to be written,
+     * in order.
+     */
+    private final BlockingQueue<ByteBuffer> free =
+            new ArrayBlockingQueue<>(BUFFERS);
+    private final BlockingQueue<ByteBuffer> pending =
+            new ArrayBlockingQueue<>(BUFFERS);
+
+    /**
+     * The buffer the record of the current turn is written into, or null if
+     * no record is being written.
+     */
+    private ByteBuffer record;
+
+    /**
+     * The file, and the thread writing to it.
+     */
+    private final FileChannel channel;
+    private final Thread writer;
+
+    /**
+     * Whether or not the log is being closed, after which the writer writes
+     * what is left and stops.
+     */
+    private volatile boolean closing;
+
+    /**
+     * Opens a new replay file in the given folder, and starts the thread
+     * that writes to it. The file is closed when the program exits.
+     * @param directory The folder, which is created if needed.
+     * @throws IOException If the file can't be created.
+     */
+    public ReplayLog(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(String.format("replay-%d-%d.bin",
+                ProcessHandle.current().pid(), FILES.incrementAndGet()));
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            this.channel.write(header);
+        }
+        for (int k = 0; k < BUFFERS; k++) {
+            this.free.add(ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES));
+        }
+        this.writer = new Thread(this::write, "replay-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Creates the log given by the ai.replayLog system property: the folder
+     * to write replay files to. By default, nothing is logged.
+     * @return The log, or null if it is turned off or can't be opened.
+     */
+    public static ReplayLog fromProperties() {
+        String directory = System.getProperty("ai.replayLog", "");
+        if (directory.isEmpty() || directory.equals("none")) {
+            return null;
+        }
+        try {
+            return new ReplayLog(Paths.get(directory));
+        } catch (IOException e) {
+            // Playing matters more than logging.
+            return null;
+        }
+    }
+
+    /**
+     * Starts the record of a turn. Every record is laid out as its length in
+     * bytes, not counting the length itself, followed by whatever is put
+     * into it until it is finished.
+     * @param bytes The most bytes the record will take.
+     * @return The buffer to write the record into, or null if every buffer
+     * is waiting to be written, in which case the record is dropped.
+     */
+    public ByteBuffer begin(int bytes) {
+        ByteBuffer buffer = this.free.poll();
+        if (buffer == null) {
+            this.recordsDropped++;
+            return null;
+        }
+        int capacity = buffer.capacity();
+        while (capacity < bytes + 4) {
+            capacity *= 2;
+        }
+        if (capacity != buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+        buffer.clear();
+        buffer.putInt(0);
+        this.record = buffer;
+        return buffer;
+    }
+
+    /**
+     * Finishes the record of the current turn, and hands it to the writer.
+     * The writer is only woken early once half the buffers are waiting, so
+     * that most turns don't pay for a thread switch.
+     */
+    public void finish() {
+        ByteBuffer buffer = this.record;
+        this.record = null;
+        if (buffer == null) {
+            return;
+        }
+        buffer.putInt(0, buffer.position() - 4);
+        buffer.flip();
+        if (!this.pending.offer(buffer)) {
+            this.recordsDropped++;
+        } else if (this.pending.size() >= BUFFERS / 2) {
+            LockSupport.unpark(this.writer);
+        }
+    }
+
+    /**
+     * Writes the records that are waiting every FLUSH_NANOS, or sooner if
+     * woken, until the log is closed. Everything that is waiting is written
+     * in one go, so that a backlog costs a single call to the file system.
+     */
+    private void write() {
+        ByteBuffer[] batch = new ByteBuffer[BUFFERS];
+        boolean done = false;
+        while (!done) {
+            LockSupport.parkNanos(FLUSH_NANOS);
+            // Read the flag first, so that every record finished before the
+            // log was closed is still written below.
+            done = this.closing;
+            int count = 0;
+            for (ByteBuffer next; count < batch.length
+                    && (next = this.pending.poll()) != null; ) {
+                batch[count++] = next;
+            }
+            if (count == 0) {
+                continue;
+            }
+            try {
+                long remaining = 0;
+                for (int k = 0; k < count; k++) {
+                    remaining += batch[k].remaining();
+                }
+                while (remaining > 0) {
+                    remaining -= this.channel.write(batch, 0, count);
+                }
+                this.recordsWritten += count;
+            } catch (IOException e) {
+                this.recordsFailed += count;
+            }
+            for (int k = 0; k < count; k++) {
+                this.free.offer(batch[k]);
+                batch[k] = null;
+            }
+        }
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // The records already written are kept either way.
+        }
+    }
+
+    /**
+     * Writes every record that is waiting, and closes the file.
+     */
+    public void close() {
+        this.closing = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
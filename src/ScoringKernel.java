@@ -0,0 +1,132 @@
+public class ScoringKernel {
+    /**
+     * The number of pickups, and what every pickup is worth to every unit
+     * before its distance is taken into account, indexed by [unit][pickup].
+     */
+    int pickupCount;
+    double[][] pickupWeights = new double[0][];
+
+    /**
+     * The number of living enemies, the index of each among all enemies, and
+     * how much every unit wants to fight each before its distance is taken
+     * into account, indexed by [unit][living enemy].
+     */
+    int enemyCount;
+    int[] enemyIndices = new int[0];
+    double[][] enemyWeights = new double[0][];
+
+    /**
+     * The number of control points, and for each: whether we already hold
+     * it, and the factors its value is scaled by for being a mainframe, for
+     * being a mainframe while the unit is shielded, for the number of
+     * mainframes we hold, and for the enemy being down to its last
+     * mainframe. Factors that don't apply are 1, which changes nothing.
+     */
+    int controlPointCount;
+    boolean[] controlPointHeld = new boolean[0];
+    double[] mainframeScales = new double[0];
+    double[] shieldScales = new double[0];
+    double[] mainframeDivisors = new double[0];
+    double[] lastMainframeScales = new double[0];
+
+    /**
+     * The path lengths from the tile being scored to every pickup, living
+     * enemy and control point, filled in by the caller before scoring it.
+     */
+    int[] pickupDistances = new int[0];
+    int[] enemyDistances = new int[0];
+    int[] controlPointDistances = new int[0];
+
+    /**
+     * Makes room for the given numbers of units and features, keeping the
+     * arrays if they are already the right size.
+     * @param units The number of our units.
+     * @param pickups The number of pickups.
+     * @param enemies The number of enemies, living or not.
+     * @param controlPoints The number of control points.
+     */
+    public void resize(int units, int pickups, int enemies,
+                       int controlPoints) {
+        if (this.pickupWeights.length != units
+                || this.pickupDistances.length != pickups) {
+            this.pickupWeights = new double[units][pickups];
+            this.pickupDistances = new int[pickups];
+        }
+        if (this.enemyWeights.length != units
+                || this.enemyIndices.length != enemies) {
+            this.enemyWeights = new double[units][enemies];
+            this.enemyIndices = new int[enemies];
+            this.enemyDistances = new int[enemies];
+        }
+        if (this.controlPointHeld.length != controlPoints) {
+            this.controlPointHeld = new boolean[controlPoints];
+            this.mainframeScales = new double[controlPoints];
+            this.shieldScales = new double[controlPoints];
+            this.mainframeDivisors = new double[controlPoints];
+            this.lastMainframeScales = new double[controlPoints];
+            this.controlPointDistances = new int[controlPoints];
+        }
+        this.pickupCount = pickups;
+        this.controlPointCount = controlPoints;
+    }
+
+    /**
+     * Finds the most a unit wants any pickup from the tile being scored.
+     * The further away a pickup is, the less it is wanted, so its weight is
+     * divided by one more than its path length, unless the unit is on it.
+     * @param unit The unit in question.
+     * @param value The value to beat.
+     * @return The larger of the value and the best pickup.
+     */
+    public double pickupMaximum(int unit, double value) {
+        double[] weights = this.pickupWeights[unit];
+        int[] distances = this.pickupDistances;
+        for (int k = 0; k < this.pickupCount; k++) {
+            int len = distances[k];
+            double val = len != 0 ? weights[k] / (len + 1) : weights[k];
+            value = val >= value ? val : value;
+        }
+        return value;
+    }
+
+    /**
+     * Finds the most a unit wants to fight any living enemy from the tile
+     * being scored. Enemies further away are less wanted, and the result is
+     * scaled by 5 to make fighting worth more than most pickups.
+     * @param unit The unit in question.
+     * @param value The value to beat.
+     * @return The larger of the value and the best enemy.
+     */
+    public double enemyMaximum(int unit, double value) {
+        double[] weights = this.enemyWeights[unit];
+        int[] distances = this.enemyDistances;
+        for (int n = 0; n < this.enemyCount; n++) {
+            double val = weights[n] / (distances[n] + 1) * 5;
+            value = val >= value ? val : value;
+        }
+        return value;
+    }
+
+    /**
+     * Finds the most a unit wants any control point from the tile being
+     * scored. A control point is worth 50 divided by its path length, or
+     * nothing at all if we already hold it, scaled by the factors above.
+     * @param shielded Whether or not the unit is shielded.
+     * @param value The value to beat.
+     * @return The larger of the value and the best control point.
+     */
+    public double controlPointMaximum(boolean shielded, double value) {
+        int[] distances = this.controlPointDistances;
+        for (int k = 0; k < this.controlPointCount; k++) {
+            int len = distances[k];
+            double val = len != 0 ? 50d / len : 50;
+            val = this.controlPointHeld[k] ? -15000000 : val;
+            val *= this.mainframeScales[k];
+            val *= shielded ? this.shieldScales[k] : 1;
+            val /= this.mainframeDivisors[k];
+            val *= this.lastMainframeScales[k];
+            value = val >= value ? val : value;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,185 @@
+public class TargetAssignment {
+    /**
+     * The number of friendly and enemy units.
+     */
+    int friendlyCount;
+    int enemyCount;
+
+    /**
+     * Whether or not each enemy may be chosen as a target at all. Dead and
+     * shielded enemies are not worth shooting at.
+     */
+    boolean[] targetable;
+
+    /**
+     * Whether or not each friendly unit would deal damage to each enemy if it
+     * fired on it, indexed by [friendly][enemy].
+     */
+    boolean[][] canHit;
+
+    /**
+     * The damage each friendly unit deals with a single shot.
+     */
+    int[] damage;
+
+    /**
+     * The health of each enemy unit.
+     */
+    int[] health;
+
+    /**
+     * The enemy each friendly unit should fire upon, or -1 if no attack
+     * pattern is worth anything.
+     */
+    int[] assignment;
+
+    /**
+     * The score of the chosen attack pattern.
+     */
+    double bestScore;
+
+    /**
+     * How long the last call to solve took, in nanoseconds.
+     */
+    long solveNanos;
+
+    /**
+     * For each enemy, the set of friendly units that could hurt it, as a bit
+     * mask over the friendly units.
+     */
+    private int[] hitMasks;
+
+    /**
+     * The damage and number of shooters each enemy has already been assigned
+     * while the attack pattern is being reconstructed.
+     */
+    private int[] fixedDamage;
+    private int[] fixedShooters;
+
+    /**
+     * The tables of best scores over sets of units, for the enemies so far
+     * and for the enemy being added. These are kept between calls, so that
+     * solving allocates nothing once the number of units stays the same.
+     */
+    private double[] best;
+    private double[] next;
+
+    /**
+     * Finds the attack pattern with the greatest score.
+     *
+     * The score of an attack pattern is the sum, over living enemies, of the
+     * fraction of their health we take off, counting the damage dealt times
+     * the number of shooters, as focus fire is worth more. Rather than trying
+     * every way of choosing a target for every unit, the best pattern is found
+     * one enemy at a time, over the sets of units that could fire upon it.
+     *
+     * If several attack patterns share the greatest score, the one chosen is
+     * the first one that trying every pattern in order would have found.
+     */
+    public void solve() {
+        long start = System.nanoTime();
+        if (this.assignment == null
+                || this.assignment.length != this.friendlyCount) {
+            this.assignment = new int[this.friendlyCount];
+            this.best = new double[1 << this.friendlyCount];
+            this.next = new double[1 << this.friendlyCount];
+        }
+        if (this.hitMasks == null || this.hitMasks.length != this.enemyCount) {
+            this.hitMasks = new int[this.enemyCount];
+            this.fixedDamage = new int[this.enemyCount];
+            this.fixedShooters = new int[this.enemyCount];
+        }
+        java.util.Arrays.fill(this.assignment, -1);
+        java.util.Arrays.fill(this.hitMasks, 0);
+        java.util.Arrays.fill(this.fixedDamage, 0);
+        java.util.Arrays.fill(this.fixedShooters, 0);
+        boolean anyTarget = false;
+        for (int e = 0; e < this.enemyCount; e++) {
+            anyTarget |= this.targetable[e];
+            for (int i = 0; i < this.friendlyCount; i++) {
+                if (this.targetable[e] && this.canHit[i][e]) {
+                    this.hitMasks[e] |= 1 << i;
+                }
+            }
+        }
+        this.bestScore = anyTarget ? this.bestCompletion(0) : 0;
+        // An attack pattern that does no damage is no attack pattern at all.
+        if (this.bestScore > 0) {
+            // Choose the lowest target for each unit in turn for which the
+            // remaining units can still reach the best score.
+            for (int i = 0; i < this.friendlyCount; i++) {
+                for (int e = 0; e < this.enemyCount; e++) {
+                    if (!this.targetable[e]) {
+                        continue;
+                    }
+                    boolean hits = this.canHit[i][e];
+                    if (hits) {
+                        this.fixedDamage[e] += this.damage[i];
+                        this.fixedShooters[e]++;
+                    }
+                    if (this.bestCompletion(i + 1) == this.bestScore) {
+                        this.assignment[i] = e;
+                        break;
+                    }
+                    if (hits) {
+                        this.fixedDamage[e] -= this.damage[i];
+                        this.fixedShooters[e]--;
+                    }
+                }
+            }
+        }
+        this.solveNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Computes the greatest score that can be reached by choosing targets for
+     * the units from the given one onwards, on top of the targets already
+     * fixed for the units before it.
+     * @param first The first unit whose target is still free.
+     * @return The greatest score of any such attack pattern.
+     */
+    private double bestCompletion(int first) {
+        int free = this.friendlyCount - first;
+        int full = (1 << free) - 1;
+        // best[mask] is the greatest score of the enemies so far, using only
+        // the free units in the mask. Units that are left over simply fire at
+        // an enemy they can't hit, which doesn't change the score.
+        double[] best = this.best;
+        double[] next = this.next;
+        java.util.Arrays.fill(best, 0, full + 1, 0);
+        for (int e = 0; e < this.enemyCount; e++) {
+            if (this.health[e] <= 0) {
+                continue;
+            }
+            int hitters = (this.hitMasks[e] >>> first) & full;
+            for (int mask = 0; mask <= full; mask++) {
+                double bestHere = Double.NEGATIVE_INFINITY;
+                int available = mask & hitters;
+                // Try every set of available units firing on this enemy,
+                // including none of them.
+                for (int shooters = available; ; shooters =
+                        (shooters - 1) & available) {
+                    int totalDamage = this.fixedDamage[e];
+                    int totalShooters = this.fixedShooters[e];
+                    for (int rest = shooters; rest != 0; rest &= rest - 1) {
+                        totalDamage += this.damage[first
+                                + Integer.numberOfTrailingZeros(rest)];
+                        totalShooters++;
+                    }
+                    double score = best[mask ^ shooters]
+                            + (1d * Math.min(totalDamage * totalShooters,
+                            this.health[e])) / this.health[e];
+                    bestHere = Math.max(bestHere, score);
+                    if (shooters == 0) {
+                        break;
+                    }
+                }
+                next[mask] = bestHere;
+            }
+            double[] swap = best;
+            best = next;
+            next = swap;
+        }
+        return best[full];
+    }
+}
@@ -0,0 +1,125 @@
+import com.orbischallenge.game.engine.*;
+import com.orbischallenge.ctz.objects.*;
+
+public class ThreatMap {
+    /**
+     * The width and height of the map.
+     */
+    final int width;
+    final int height;
+
+    /**
+     * The total damage all enemies could deal to each tile this turn, indexed
+     * by x * height + y.
+     */
+    final int[] expectedDamage;
+
+    /**
+     * The number of enemies that could shoot each tile this turn, indexed by
+     * x * height + y.
+     */
+    final int[] enemyCount;
+
+    /**
+     * Creates an empty threat map for a map of the given size.
+     * @param width The width of the map.
+     * @param height The height of the map.
+     */
+    public ThreatMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.expectedDamage = new int[width * height];
+        this.enemyCount = new int[width * height];
+    }
+
+    /**
+     * Recomputes the threat on every tile from the current enemy positions.
+     *
+     * Each living enemy can fire along the eight directions until a wall or
+     * the end of its range, so only the tiles along those rays are touched,
+     * rather than checking every tile against every enemy.
+     * @param lineOfSight How far one can see from every tile.
+     * @param enemyUnits The array of enemy units.
+     */
+    public void update(LineOfSight lineOfSight, EnemyUnit[] enemyUnits) {
+        java.util.Arrays.fill(this.expectedDamage, 0);
+        java.util.Arrays.fill(this.enemyCount, 0);
+        for (EnemyUnit e : enemyUnits) {
+            if (e.getHealth() <= 0) {
+                continue;
+            }
+            int x = e.getPosition().getX();
+            int y = e.getPosition().getY();
+            int range = e.getCurrentWeapon().getRange();
+            int damage = e.getCurrentWeapon().getDamage();
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    if (dx == 0 && dy == 0) {
+                        continue;
+                    }
+                    int length = Math.min(range,
+                            lineOfSight.getRayLength(x, y, dx, dy));
+                    for (int k = 1; k <= length; k++) {
+                        int index = (x + k * dx) * this.height + y + k * dy;
+                        this.expectedDamage[index] += damage;
+                        this.enemyCount[index]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up the total damage the enemies could deal to a tile this turn.
+     * @param p The tile in question.
+     * @return The sum of the damage of every enemy that could shoot the tile.
+     */
+    public int getExpectedDamage(Point p) {
+        return this.getExpectedDamage(p.getX(), p.getY());
+    }
+
+    /**
+     * Looks up the total damage the enemies could deal to a tile this turn.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The sum of the damage of every enemy that could shoot the tile.
+     */
+    public int getExpectedDamage(int x, int y) {
+        if (!this.contains(x, y)) {
+            return 0;
+        }
+        return this.expectedDamage[x * this.height + y];
+    }
+
+    /**
+     * Looks up how many enemies could shoot a tile this turn.
+     * @param p The tile in question.
+     * @return The number of enemies that could shoot the tile.
+     */
+    public int getEnemyCount(Point p) {
+        return this.getEnemyCount(p.getX(), p.getY());
+    }
+
+    /**
+     * Looks up how many enemies could shoot a tile this turn.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return The number of enemies that could shoot the tile.
+     */
+    public int getEnemyCount(int x, int y) {
+        if (!this.contains(x, y)) {
+            return 0;
+        }
+        return this.enemyCount[x * this.height + y];
+    }
+
+    /**
+     * Determines whether a tile lies on the map.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @return Whether or not the tile is within the bounds of the map.
+     */
+    private boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < this.width && y < this.height;
+    }
+}
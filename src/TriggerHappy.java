@@ -1,10 +1,9 @@
 import com.orbischallenge.ctz.objects.enums.Direction;
+import com.orbischallenge.ctz.objects.enums.Team;
 
 import com.orbischallenge.game.engine.*;
 import com.orbischallenge.ctz.objects.*;
 
-import java.util.ArrayList;
-
 
 public class TriggerHappy {
 
@@ -12,81 +11,323 @@ public class TriggerHappy {
 			Direction.NORTH_EAST, Direction.NORTH_WEST, Direction.SOUTH,
 			Direction.SOUTH_EAST, Direction.SOUTH_WEST, Direction.WEST};
 
+	/**
+	 * Times every phase of every turn and counts the queries each turn makes.
+	 */
+	TurnProfiler profiler;
+
+	/**
+	 * The extra cost of stepping onto a tile, for each enemy that could shoot
+	 * it this turn.
+	 */
+	static final int DANGER_WEIGHT = 4;
+
+	/**
+	 * Finds paths around the walls, how far one can see from every tile, and
+	 * which tiles the enemies could shoot. Created on the first turn.
+	 */
+	PathFinder pathFinder;
+	LineOfSight lineOfSight;
+	ThreatMap threatMap;
+
+	/**
+	 * Whether or not moves are scored this turn by the path finder's costs,
+	 * which route around danger, rather than by the mainframe field.
+	 */
+	boolean dangerFieldUsed;
+
+	/**
+	 * The way to the nearest mainframe from every tile, and who held each
+	 * control point when it was last worked out.
+	 */
+	DistanceField mainframeField;
+	Team[] controlPointOwners;
+
+	/**
+	 * Every move a unit can make, including staying put, and how far each
+	 * shifts a unit along either axis.
+	 */
+	static final Direction[] MOVES = Direction.values();
+	static final int[] MOVE_X = new int[MOVES.length];
+	static final int[] MOVE_Y = new int[MOVES.length];
+
+	static {
+		for (int d = 0; d < MOVES.length; d++) {
+			Point step = MOVES[d].movePoint(Point.origin());
+			MOVE_X[d] = step.getX();
+			MOVE_Y[d] = step.getY();
+		}
+	}
+
+	/**
+	 * How much a move is worth for each step it leaves between a unit and
+	 * the nearest mainframe, and for each enemy that could shoot the tile it
+	 * ends on. Both count against the move.
+	 */
+	static final int DISTANCE_WEIGHT = 2;
+	static final int EXPOSURE_WEIGHT = 3;
+
+	/**
+	 * The moves each unit is considered for this turn, best first: the index
+	 * of each move in MOVES, or -1 for a unit that isn't given one, the tile
+	 * it ends on, as x * height + y, and its score. A unit that shot, is dead
+	 * or can't reach a mainframe has only the one option of staying put.
+	 */
+	int[][] optionMoves;
+	int[][] optionTiles;
+	int[][] optionScores;
+	int[] optionCounts;
+
+	/**
+	 * The tile each unit starts the turn on, and the sum of the best scores
+	 * of the units from each one onwards, which bounds what the rest of a
+	 * search can add.
+	 */
+	int[] startTiles;
+	int[] bestRemaining;
+
+	/**
+	 * The option chosen for each unit on the branch being searched, and on
+	 * the best set of moves found so far, along with its score.
+	 */
+	int[] chosenOptions;
+	int[] bestOptions;
+	int bestScore;
+
     public TriggerHappy() {
+	    profiler = new TurnProfiler("TriggerHappy");
     }
 
-//    private ArrayList<Point> path(World world, EnemyUnit[] enemyUnits, Point start,
-//                                   Point end) {
-//		double[][] distances = new double[worldWidth][worldHeight];
-//		boolean[][] visited = new boolean[worldWidth][worldHeight];
-//		ArrayList<Point>[][] paths =
-//				new ArrayList<Point>[worldWidth][worldHeight];
-//		for (int i = 0; i < distances.length; i++) {
-//			for (int j = 0; j < distances[i].length; j++) {
-//				paths[i][j] = new ArrayList<>();
-//				distances[i][j] = i == start.getX() && j == start.getY() ? 0 :
-//						Double.MAX_VALUE;
-//				if (i == start.getX() && j == start.getY()) {
-//					paths[i][j].add(start);
-//				}
-//			}
-//		}
-//		Point current = start;
-//		while (!visited[end.getX()][end.getY()]) {
-//			visited[current.getX()][current.getY()] = true;
-//			for (Direction direction : directions) {
-//				Point considered = direction.movePoint(current);
-//				if (!visited[considered.getX()][considered.getY()]) {
-//					double newDistance =
-//							distances[current.getX()][current.getY()] + 1;
-//					//node weight of considered goes instead of the 1 above
-//					if (distances[considered.getX()][considered.getY()] >
-//							newDistance) {
-//						distances[considered.getX()][considered.getY()] =
-//								newDistance;
-//						paths[considered.getX()][considered.getY()] =
-//								(ArrayList<Point>)
-//										paths[current.getX()][current.getY()]
-//												.clone();
-//						paths[considered.getX()][considered.getY()]
-//								.add(considered);
-//					}
-//				}
-//			}
-//			double minDistance = Double.MAX_VALUE;
-//			Point next = null;
-//			for (int i = 0; i < distances.length; i++) {
-//				for (int j = 0; j < distances[i].length; j++) {
-//					if (!visited[i][j]) {
-//						if (distances[i][j] < minDistance) {
-//							minDistance = distances[i][j];
-//							next = new Point(i, j);
-//						}
-//					}
-//				}
-//			}
-//			current = next;
-//		}
-//		return paths[end.getX()][end.getY()];
-//	}
-
-    private ControlPoint findNearestMainframe(World world, Point p) {
-        ControlPoint[] allPoints = world.getControlPoints();
-        ControlPoint closest = null;
-        int longest = 1000;
-        for (ControlPoint cp: allPoints) {
-            if (cp.isMainframe()) {
-                int len = world.getPathLength(p, cp.getPosition());
-                if (len < longest) {
-                    longest = len;
-                    closest = cp;
-                }
-            }
-        }
-        if (closest == null) {
-            closest = world.getNearestControlPoint(p);
-        }
-        return closest;
+	/**
+	 * Measures how far every tile is from the nearest of the mainframe
+	 * field's sources, treating every tile an enemy could shoot this turn as
+	 * DANGER_WEIGHT extra steps long per enemy, so that units go around
+	 * danger unless that is too far. With no tile in danger, this is just
+	 * the mainframe field, so the path finder is left alone.
+	 */
+    private void updateDangerField() {
+	    int[] weights = this.pathFinder.weights;
+	    int[] enemyCount = this.threatMap.enemyCount;
+	    boolean danger = false;
+	    for (int k = 0; k < weights.length; k++) {
+		    weights[k] = 1 + DANGER_WEIGHT * enemyCount[k];
+		    danger |= enemyCount[k] != 0;
+	    }
+	    this.dangerFieldUsed = danger;
+	    if (!danger) {
+		    return;
+	    }
+	    int height = this.mainframeField.height;
+	    int[] distances = this.mainframeField.distances;
+	    this.pathFinder.clear();
+	    for (int k = 0; k < distances.length; k++) {
+		    if (distances[k] == 0) {
+			    this.pathFinder.addSource(k / height, k % height);
+		    }
+	    }
+	    this.pathFinder.spread();
+    }
+
+	/**
+	 * Reads the map from the world, which the path finder, the threat map it
+	 * is weighted by and the mainframe field need. Only done once, on the
+	 * first turn, as walls never change.
+	 * @param world The latest state of the world.
+	 */
+    private void analyseMap(World world) {
+	    MapGrid grid = MapGrid.read(world);
+	    this.profiler.tileQueries += grid.width * grid.height;
+	    this.pathFinder = new PathFinder(grid);
+	    this.lineOfSight = new LineOfSight(grid);
+	    this.threatMap = new ThreatMap(grid.width, grid.height);
+	    this.mainframeField = new DistanceField(grid);
+    }
+
+	/**
+	 * Points every tile at the nearest mainframe, or at the nearest control
+	 * point if there are no mainframes. The field only depends on the control
+	 * points, so it is kept until one of them changes hands.
+	 * @param world The latest state of the world.
+	 */
+    private void updateMainframeField(World world) {
+	    ControlPoint[] allPoints = world.getControlPoints();
+	    boolean changed = this.controlPointOwners == null
+			    || this.controlPointOwners.length != allPoints.length;
+	    if (changed) {
+		    this.controlPointOwners = new Team[allPoints.length];
+	    }
+	    for (int k = 0; k < allPoints.length; k++) {
+		    Team owner = allPoints[k].getControllingTeam();
+		    if (this.controlPointOwners[k] != owner) {
+			    this.controlPointOwners[k] = owner;
+			    changed = true;
+		    }
+	    }
+	    if (!changed) {
+		    return;
+	    }
+	    this.mainframeField.clear();
+	    boolean anyMainframe = false;
+	    for (ControlPoint cp : allPoints) {
+		    if (cp.isMainframe()) {
+			    this.mainframeField.addSource(cp.getPosition().getX(),
+					    cp.getPosition().getY());
+			    anyMainframe = true;
+		    }
+	    }
+	    if (!anyMainframe) {
+		    for (ControlPoint cp : allPoints) {
+			    this.mainframeField.addSource(cp.getPosition().getX(),
+					    cp.getPosition().getY());
+		    }
+	    }
+	    this.mainframeField.spread();
+    }
+
+	/**
+	 * Chooses a move for every unit that hasn't shot, so that together they
+	 * get as close to the mainframes and stay as far out of the enemies' line
+	 * of fire as they can, without two of them ending on the same tile or
+	 * swapping places, which the game wouldn't allow.
+	 *
+	 * Each unit's moves are scored on their own first, leaving out moves onto
+	 * walls and enemies, and sorted best first. A depth first search then
+	 * only has to reject the sets of moves that collide, and gives up on any
+	 * branch that can't beat the best set found so far even if every unit
+	 * left got its best move. The chosen options are left in bestOptions.
+	 * @param enemyUnits The array of enemy units.
+	 * @param friendlyUnits The array of friendly units.
+	 * @param moved Whether or not each friendly unit has already shot.
+	 */
+    private void planMoves(EnemyUnit[] enemyUnits,
+                           FriendlyUnit[] friendlyUnits, boolean[] moved) {
+	    int units = friendlyUnits.length;
+	    if (this.optionCounts == null || this.optionCounts.length != units) {
+		    this.optionMoves = new int[units][MOVES.length];
+		    this.optionTiles = new int[units][MOVES.length];
+		    this.optionScores = new int[units][MOVES.length];
+		    this.optionCounts = new int[units];
+		    this.startTiles = new int[units];
+		    this.bestRemaining = new int[units + 1];
+		    this.chosenOptions = new int[units];
+		    this.bestOptions = new int[units];
+	    }
+	    int height = this.mainframeField.height;
+	    for (int i = units - 1; i >= 0; i--) {
+		    FriendlyUnit friendlyUnit = friendlyUnits[i];
+		    int x = friendlyUnit.getPosition().getX();
+		    int y = friendlyUnit.getPosition().getY();
+		    this.startTiles[i] = x * height + y;
+		    this.optionCounts[i] = 0;
+		    if (moved[i] || friendlyUnit.getHealth() <= 0
+				    || this.mainframeField.getDistance(x, y)
+				    == DistanceField.UNREACHED) {
+			    this.addOption(i, -1, this.startTiles[i], 0);
+		    } else {
+			    // Consider the way to the mainframe first, so that it wins
+			    // any ties.
+			    int preferred = this.mainframeField.getDirection(
+					    friendlyUnit.getPosition()).ordinal();
+			    this.scoreMove(i, preferred, x, y, enemyUnits);
+			    for (int d = 0; d < MOVES.length; d++) {
+				    if (d != preferred) {
+					    this.scoreMove(i, d, x, y, enemyUnits);
+				    }
+			    }
+		    }
+		    this.bestRemaining[i] =
+				    this.bestRemaining[i + 1] + this.optionScores[i][0];
+	    }
+	    this.bestScore = Integer.MIN_VALUE;
+	    this.searchMoves(0, 0);
+    }
+
+	/**
+	 * Scores one move of a unit and adds it to the unit's options, unless it
+	 * runs into a wall or an enemy.
+	 * @param unit The index of the unit.
+	 * @param move The index of the move in MOVES.
+	 * @param x The x coordinate the unit starts on.
+	 * @param y The y coordinate the unit starts on.
+	 * @param enemyUnits The array of enemy units.
+	 */
+    private void scoreMove(int unit, int move, int x, int y,
+                           EnemyUnit[] enemyUnits) {
+	    int newX = x + MOVE_X[move];
+	    int newY = y + MOVE_Y[move];
+	    int distance = this.mainframeField.getDistance(newX, newY);
+	    if (distance == DistanceField.UNREACHED) {
+		    return;
+	    }
+	    if (this.dangerFieldUsed) {
+		    distance = this.pathFinder.getDistance(newX, newY);
+	    }
+	    for (EnemyUnit enemyUnit : enemyUnits) {
+		    if (enemyUnit.getHealth() > 0
+				    && enemyUnit.getPosition().getX() == newX
+				    && enemyUnit.getPosition().getY() == newY) {
+			    return;
+		    }
+	    }
+	    this.addOption(unit, move, newX * this.mainframeField.height + newY,
+			    -DISTANCE_WEIGHT * distance - EXPOSURE_WEIGHT
+					    * this.threatMap.getEnemyCount(newX, newY));
+    }
+
+	/**
+	 * Adds an option to a unit's list, keeping the list sorted from the best
+	 * score to the worst. Options with equal scores keep the order they were
+	 * added in.
+	 * @param unit The index of the unit.
+	 * @param move The index of the move in MOVES, or -1 for none.
+	 * @param tile The tile the unit ends on.
+	 * @param score How good the move is.
+	 */
+    private void addOption(int unit, int move, int tile, int score) {
+	    int[] moves = this.optionMoves[unit];
+	    int[] tiles = this.optionTiles[unit];
+	    int[] scores = this.optionScores[unit];
+	    int k = this.optionCounts[unit]++;
+	    while (k > 0 && scores[k - 1] < score) {
+		    moves[k] = moves[k - 1];
+		    tiles[k] = tiles[k - 1];
+		    scores[k] = scores[k - 1];
+		    k--;
+	    }
+	    moves[k] = move;
+	    tiles[k] = tile;
+	    scores[k] = score;
+    }
+
+	/**
+	 * Tries every option of a unit that doesn't collide with the options
+	 * already chosen for the units before it, and searches the units after
+	 * it for each.
+	 * @param unit The index of the unit.
+	 * @param score The total score of the options chosen so far.
+	 */
+    private void searchMoves(int unit, int score) {
+	    if (score + this.bestRemaining[unit] <= this.bestScore) {
+		    return;
+	    }
+	    if (unit == this.optionCounts.length) {
+		    this.bestScore = score;
+		    System.arraycopy(this.chosenOptions, 0, this.bestOptions, 0, unit);
+		    return;
+	    }
+	    for (int k = 0; k < this.optionCounts[unit]; k++) {
+		    int tile = this.optionTiles[unit][k];
+		    boolean collides = false;
+		    for (int j = 0; j < unit && !collides; j++) {
+			    int other = this.optionTiles[j][this.chosenOptions[j]];
+			    collides = other == tile || (tile == this.startTiles[j]
+					    && other == this.startTiles[unit]);
+		    }
+		    if (!collides) {
+			    this.chosenOptions[unit] = k;
+			    this.searchMoves(unit + 1, score + this.optionScores[unit][k]);
+		    }
+	    }
     }
 
     private int supNorm(Point a, Point b) {
@@ -102,6 +343,7 @@ public class TriggerHappy {
 	    int minDistanceToShootableEnemy = 1000;
 	    EnemyUnit target = null;
 	    for (Direction direction : directions) {
+		    this.profiler.lineOfSightQueries++;
 		    EnemyUnit enemyUnit =
 				    world.getClosestShootableEnemyInDirection(friendlyUnit,
 						    direction);
@@ -129,6 +371,12 @@ public class TriggerHappy {
 	 */
     public void doMove(World world, EnemyUnit[] enemyUnits,
                        FriendlyUnit[] friendlyUnits) {
+	    this.profiler.beginTurn();
+	    if (this.pathFinder == null) {
+		    this.profiler.beginPhase(TurnProfiler.Phase.MAP_ANALYSIS);
+		    this.analyseMap(world);
+	    }
+	    this.profiler.beginPhase(TurnProfiler.Phase.TARGETING);
 	    boolean[] moved = new boolean[friendlyUnits.length];
 	    for (int i = 0; i < friendlyUnits.length; i++) {
 		    FriendlyUnit friendlyUnit = friendlyUnits[i];
@@ -138,72 +386,23 @@ public class TriggerHappy {
 			    moved[i] = true;
 		    }
 	    }
-	    int[][][][] score = new int[directions.length][directions.length]
-			    [directions.length][directions.length];
-	    for (int i1 = 0; i1 < directions.length; i1++) {
-		    for (int i2 = 0; i2 < directions.length; i2++) {
-			    for (int i3 = 0; i3 < directions.length; i3++) {
-				    for (int i4 = 0; i4 < directions.length; i4++) {
-					    score[i1][i2][i3][i4] = -1;
-				    }
-			    }
-		    }
-	    }
-	    for (int i1 = 0; i1 < directions.length; i1++) {
-		    if (world.canMoveFromPointInDirection(
-		    		friendlyUnits[1].getPosition(), directions[i1])) {
-			    for (int i2 = 0; i2 < directions.length; i2++) {
-				    if (world.canMoveFromPointInDirection(
-						    friendlyUnits[1].getPosition(), directions[i2])) {
-				        for (int i3 = 0; i3 < directions.length; i3++) {
-					        if (world.canMoveFromPointInDirection(
-							        friendlyUnits[1].getPosition(),
-							        directions[i3])) {
-					            for (int i4 = 0; i4 < directions.length; i4++) {
-						            for (int j = 0; j < enemyUnits.length;
-						                 j++) {
-
-						            }
-					            }
-					        }
-					    }
-				    }
-			    }
-		    }
-	    }
-	    /*
-	    for (int i = 0; i < friendlyUnits.length; i++) {
-		    if (!moved[i]) {
-			    for (Direction direction : directions) {
-				    for (EnemyUnit enemyUnit : enemyUnits) {
-				        if (world.canShooterShootTarget(
-				        		direction.movePoint(
-				        				friendlyUnits[i].getPosition()),
-							    enemyUnit.getPosition(),
-							    friendlyUnits[i].getCurrentWeapon()
-									    .getRange())) {
-					        friendlyUnits[i].move(direction);
-					        moved[i] = true;
-				        }
-				    }
-			    }
-		    }
-	    }
-	    */
+	    this.profiler.beginPhase(TurnProfiler.Phase.JOINT_SEARCH);
+	    this.threatMap.update(this.lineOfSight, enemyUnits);
+	    updateMainframeField(world);
+	    updateDangerField();
+	    planMoves(enemyUnits, friendlyUnits, moved);
+	    this.profiler.beginPhase(TurnProfiler.Phase.MOVES);
         for (int i = 0; i < friendlyUnits.length; i++) {
 	        if (!moved[i]) {
-		        if (findNearestMainframe(world, friendlyUnits[i].getPosition())
-				        == null) {
+		        int move = this.optionMoves[i][this.bestOptions[i]];
+		        if (move < 0) {
 			        friendlyUnits[i].move(directions[(int) (Math.random() *
 					        directions.length)]);
 		        } else {
-			        friendlyUnits[i].move(world.getNextDirectionInPath(
-			        		friendlyUnits[i].getPosition(),
-					        findNearestMainframe(world,
-							        friendlyUnits[i].getPosition())
-							        .getPosition()));
+			        friendlyUnits[i].move(MOVES[move]);
 		        }
 	        }
         }
+	    this.profiler.endTurn();
     }
 }
@@ -0,0 +1,56 @@
+public class TurnBudget {
+    /**
+     * The time allowed for each turn, in nanoseconds, or zero for no limit.
+     */
+    long budgetNanos;
+
+    /**
+     * The time the current turn started, as given by System.nanoTime.
+     */
+    private long startNanos;
+
+    /**
+     * Whether or not the current turn has run out of time. Once it has, it
+     * stays that way until the next turn starts, so that every phase after
+     * the deadline agrees that it passed. This may be read and set by several
+     * threads at once when the search runs in parallel.
+     */
+    private volatile boolean expired;
+
+    /**
+     * Creates a budget allowing the given time per turn.
+     * @param budgetNanos The time allowed for each turn, in nanoseconds, or
+     * zero for no limit.
+     */
+    public TurnBudget(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Starts the clock for a new turn.
+     */
+    public void start() {
+        this.startNanos = System.nanoTime();
+        this.expired = false;
+    }
+
+    /**
+     * Determines whether the current turn has run out of time.
+     * @return Whether or not the deadline has passed.
+     */
+    public boolean isExpired() {
+        if (!this.expired && this.budgetNanos > 0
+                && this.getElapsedNanos() >= this.budgetNanos) {
+            this.expired = true;
+        }
+        return this.expired;
+    }
+
+    /**
+     * Measures how long the current turn has taken so far.
+     * @return The time since the turn started, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - this.startNanos;
+    }
+}
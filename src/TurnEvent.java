@@ -0,0 +1,41 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("ctz.Turn")
+@Label("Turn")
+@Category("Capture the Zone")
+@Description("A whole turn of an AI, with the number of queries it made, "
+        + "of joint move search nodes, and the time spent choosing targets")
+public class TurnEvent extends Event {
+    @Label("AI")
+    String ai;
+
+    @Label("Turn")
+    int turn;
+
+    @Label("Path Length Queries")
+    long pathLengthQueries;
+
+    @Label("Line of Sight Queries")
+    long lineOfSightQueries;
+
+    @Label("Shot Checks")
+    long shotChecks;
+
+    @Label("Tile Queries")
+    long tileQueries;
+
+    @Label("Search Nodes Expanded")
+    long nodesExpanded;
+
+    @Label("Search Nodes Pruned")
+    long nodesPruned;
+
+    @Label("Target Assignment Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long targetAssignmentNanos;
+}
@@ -0,0 +1,21 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ctz.TurnPhase")
+@Label("Turn Phase")
+@Category("Capture the Zone")
+@Description("One phase of an AI's turn, such as targeting or the joint "
+        + "move search")
+public class TurnPhaseEvent extends Event {
+    @Label("AI")
+    String ai;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Turn")
+    int turn;
+}
@@ -0,0 +1,414 @@
+import jdk.jfr.EventType;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TurnProfiler {
+    /**
+     * The phases a turn is split into. Each AI only uses the phases it has.
+     */
+    enum Phase {
+        MAP_ANALYSIS,
+        THREAT_MAP,
+        SHIELDS_AND_PICKUPS,
+        TARGETING,
+        ACTION_VALUES,
+        JOINT_SEARCH,
+        MOVES
+    }
+
+    /**
+     * Whether or not each kind of event is being recorded. Events are only
+     * created while they are, so that turns allocate nothing otherwise.
+     */
+    private static final EventType PHASE_EVENTS =
+            EventType.getEventType(TurnPhaseEvent.class);
+    private static final EventType TURN_EVENTS =
+            EventType.getEventType(TurnEvent.class);
+    private static final EventType MAP_EVENTS =
+            EventType.getEventType(MapAnalysisEvent.class);
+
+    /**
+     * Whether or not reports are printed when the program exits, which on
+     * the game server is the end of the match, as given by the ai.profile
+     * system property.
+     */
+    private static final boolean REPORT_ON_EXIT =
+            Boolean.getBoolean("ai.profile");
+
+    /**
+     * The profilers that have timed a turn and haven't been reported yet, in
+     * the order they started. A single shutdown hook reports all of them.
+     */
+    private static final List<TurnProfiler> UNREPORTED = new ArrayList<>();
+
+    static {
+        if (REPORT_ON_EXIT) {
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(TurnProfiler::reportUnreported));
+        }
+    }
+
+    /**
+     * The number of buckets in the turn latency histogram. Bucket k holds
+     * turns that took less than 2^k microseconds, and at least half that.
+     */
+    static final int BUCKETS = 32;
+
+    /**
+     * The name of the AI being profiled, as given in the events.
+     */
+    final String ai;
+
+    /**
+     * The number of the current turn, counting from one.
+     */
+    int turn;
+
+    /**
+     * The number of queries of each kind made this turn. Queries answered
+     * from one of our own precomputed tables are counted too, as they stand
+     * in for a query to the world.
+     */
+    long pathLengthQueries;
+    long lineOfSightQueries;
+    long shotChecks;
+    long tileQueries;
+
+    /**
+     * The number of partial combinations the joint move search expanded this
+     * turn, and the number it pruned.
+     */
+    long nodesExpanded;
+    long nodesPruned;
+
+    /**
+     * The same counts, summed over every turn.
+     */
+    long totalPathLengthQueries;
+    long totalLineOfSightQueries;
+    long totalShotChecks;
+    long totalTileQueries;
+    long totalNodesExpanded;
+    long totalNodesPruned;
+
+    /**
+     * The time spent solving the target assignment this turn, and over every
+     * turn, in nanoseconds, and the number of turns it was solved on.
+     */
+    long targetAssignmentNanos;
+    long totalTargetAssignmentNanos;
+    long targetAssignments;
+
+    /**
+     * The number of turns on which the moves chosen from each unit's best
+     * few directions were checked against a search of every direction, and
+     * the number of those on which the two differed.
+     */
+    long candidateChecks;
+    long candidateDisagreements;
+
+    /**
+     * The time spent in each phase, summed over every turn, in nanoseconds.
+     */
+    final long[] phaseNanos = new long[Phase.values().length];
+
+    /**
+     * The time spent in each phase of the current or last turn, in
+     * nanoseconds.
+     */
+    final long[] turnPhaseNanos = new long[Phase.values().length];
+
+    /**
+     * The number of turns that fell into each latency bucket, the number of
+     * turns in total, and the longest turn, in nanoseconds.
+     */
+    final long[] histogram = new long[BUCKETS];
+    long turns;
+    long longestTurnNanos;
+
+    /**
+     * What the AI worked out from the last map it analysed.
+     */
+    int mapWidth;
+    int mapHeight;
+    int passableTiles;
+    int maximumEffectiveRange;
+
+    /**
+     * The phase that is running, when it and the turn started, and its
+     * event if phases are being recorded.
+     */
+    private Phase phase;
+    private long phaseStart;
+    private long turnStart;
+    private TurnPhaseEvent phaseEvent;
+    private TurnEvent turnEvent;
+
+    /**
+     * Creates a profiler for an AI. If the ai.profile system property is
+     * true and the profiler times any turns, its report is printed when the
+     * program exits, unless it has been reported by then.
+     * @param ai The name of the AI.
+     */
+    public TurnProfiler(String ai) {
+        this.ai = ai;
+    }
+
+    /**
+     * Prints the report of every profiler that has timed a turn and hasn't
+     * been reported yet.
+     */
+    private static void reportUnreported() {
+        List<TurnProfiler> profilers;
+        synchronized (UNREPORTED) {
+            profilers = new ArrayList<>(UNREPORTED);
+        }
+        for (TurnProfiler profiler : profilers) {
+            profiler.report(System.out);
+        }
+    }
+
+    /**
+     * Starts timing a new turn and clears the query counts.
+     */
+    public void beginTurn() {
+        this.turn++;
+        if (this.turn == 1 && REPORT_ON_EXIT) {
+            synchronized (UNREPORTED) {
+                UNREPORTED.add(this);
+            }
+        }
+        this.pathLengthQueries = 0;
+        this.lineOfSightQueries = 0;
+        this.shotChecks = 0;
+        this.tileQueries = 0;
+        this.nodesExpanded = 0;
+        this.nodesPruned = 0;
+        this.targetAssignmentNanos = 0;
+        java.util.Arrays.fill(this.turnPhaseNanos, 0);
+        this.turnStart = System.nanoTime();
+        if (TURN_EVENTS.isEnabled()) {
+            this.turnEvent = new TurnEvent();
+            this.turnEvent.begin();
+        }
+    }
+
+    /**
+     * Ends the phase that is running, if any, and starts the next.
+     * @param next The phase that starts now.
+     */
+    public void beginPhase(Phase next) {
+        this.endPhase();
+        this.phase = next;
+        this.phaseStart = System.nanoTime();
+        if (PHASE_EVENTS.isEnabled()) {
+            this.phaseEvent = new TurnPhaseEvent();
+            this.phaseEvent.begin();
+        }
+    }
+
+    /**
+     * Ends the phase that is running, if any.
+     */
+    private void endPhase() {
+        if (this.phase == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - this.phaseStart;
+        this.phaseNanos[this.phase.ordinal()] += nanos;
+        this.turnPhaseNanos[this.phase.ordinal()] += nanos;
+        if (this.phaseEvent != null) {
+            this.phaseEvent.end();
+            if (this.phaseEvent.shouldCommit()) {
+                this.phaseEvent.ai = this.ai;
+                this.phaseEvent.phase = this.phase.name();
+                this.phaseEvent.turn = this.turn;
+                this.phaseEvent.commit();
+            }
+            this.phaseEvent = null;
+        }
+        this.phase = null;
+    }
+
+    /**
+     * Ends the turn, and adds it to the totals and the histogram.
+     */
+    public void endTurn() {
+        this.endPhase();
+        long nanos = System.nanoTime() - this.turnStart;
+        this.turns++;
+        this.longestTurnNanos = Math.max(this.longestTurnNanos, nanos);
+        int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+        this.histogram[Math.min(bucket, BUCKETS - 1)]++;
+        this.totalPathLengthQueries += this.pathLengthQueries;
+        this.totalLineOfSightQueries += this.lineOfSightQueries;
+        this.totalShotChecks += this.shotChecks;
+        this.totalTileQueries += this.tileQueries;
+        this.totalNodesExpanded += this.nodesExpanded;
+        this.totalNodesPruned += this.nodesPruned;
+        this.totalTargetAssignmentNanos += this.targetAssignmentNanos;
+        if (this.turnEvent != null) {
+            this.turnEvent.end();
+            if (this.turnEvent.shouldCommit()) {
+                this.turnEvent.ai = this.ai;
+                this.turnEvent.turn = this.turn;
+                this.turnEvent.pathLengthQueries = this.pathLengthQueries;
+                this.turnEvent.lineOfSightQueries = this.lineOfSightQueries;
+                this.turnEvent.shotChecks = this.shotChecks;
+                this.turnEvent.tileQueries = this.tileQueries;
+                this.turnEvent.nodesExpanded = this.nodesExpanded;
+                this.turnEvent.nodesPruned = this.nodesPruned;
+                this.turnEvent.targetAssignmentNanos =
+                        this.targetAssignmentNanos;
+                this.turnEvent.commit();
+            }
+            this.turnEvent = null;
+        }
+    }
+
+    /**
+     * Records what the AI worked out from the map, once the map analysis
+     * phase is done.
+     * @param width The width of the map.
+     * @param height The height of the map.
+     * @param passableTiles The number of tiles that aren't walls.
+     * @param maximumEffectiveRange The furthest any gun can reach on the map.
+     */
+    public void recordMap(int width, int height, int passableTiles,
+                          int maximumEffectiveRange) {
+        this.mapWidth = width;
+        this.mapHeight = height;
+        this.passableTiles = passableTiles;
+        this.maximumEffectiveRange = maximumEffectiveRange;
+        if (MAP_EVENTS.isEnabled()) {
+            MapAnalysisEvent event = new MapAnalysisEvent();
+            event.ai = this.ai;
+            event.width = width;
+            event.height = height;
+            event.passableTiles = passableTiles;
+            event.maximumEffectiveRange = maximumEffectiveRange;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records how long solving the target assignment took this turn.
+     * @param nanos The time it took, in nanoseconds.
+     */
+    public void recordTargetAssignment(long nanos) {
+        this.targetAssignmentNanos += nanos;
+        this.targetAssignments++;
+    }
+
+    /**
+     * Records whether the moves chosen from each unit's best few directions
+     * were the same as those a search of every direction chose.
+     * @param differs Whether or not any unit was given a different move.
+     */
+    public void recordCandidateCheck(boolean differs) {
+        this.candidateChecks++;
+        if (differs) {
+            this.candidateDisagreements++;
+        }
+    }
+
+    /**
+     * Prints what was recorded: the map, the time spent in each phase, the
+     * average number of queries and search nodes per turn, how long solving
+     * the target assignment took, how often limiting the directions changed
+     * the moves, if that was checked, and the turn latency histogram. A
+     * profiler that has been reported isn't reported again on exit.
+     * @param out Where to print the report.
+     */
+    public void report(PrintStream out) {
+        synchronized (UNREPORTED) {
+            UNREPORTED.remove(this);
+        }
+        out.printf("%s: %d turns%n", this.ai, this.turns);
+        if (this.mapWidth > 0) {
+            out.printf("  map: %dx%d, %d passable tiles, maximum effective "
+                            + "range %d%n", this.mapWidth, this.mapHeight,
+                    this.passableTiles, this.maximumEffectiveRange);
+        }
+        if (this.turns == 0) {
+            return;
+        }
+        for (Phase p : Phase.values()) {
+            long nanos = this.phaseNanos[p.ordinal()];
+            if (nanos > 0) {
+                out.printf("  %-20s %12.3f ms total %10.3f ms per turn%n",
+                        p, nanos / 1e6, nanos / 1e6 / this.turns);
+            }
+        }
+        out.printf("  queries per turn: %.1f path length, %.1f line of sight, "
+                        + "%.1f shot checks, %.1f tiles%n",
+                1d * this.totalPathLengthQueries / this.turns,
+                1d * this.totalLineOfSightQueries / this.turns,
+                1d * this.totalShotChecks / this.turns,
+                1d * this.totalTileQueries / this.turns);
+        if (this.totalNodesExpanded + this.totalNodesPruned > 0) {
+            out.printf("  search nodes per turn: %.1f expanded, %.1f pruned%n",
+                    1d * this.totalNodesExpanded / this.turns,
+                    1d * this.totalNodesPruned / this.turns);
+        }
+        if (this.targetAssignments > 0) {
+            out.printf("  target assignment: %.3f ms total, %.1f us per "
+                            + "solve over %d turns%n",
+                    this.totalTargetAssignmentNanos / 1e6,
+                    this.totalTargetAssignmentNanos / 1e3
+                            / this.targetAssignments,
+                    this.targetAssignments);
+        }
+        if (this.candidateChecks > 0) {
+            out.printf("  candidate limit: moves differ from full search on "
+                            + "%d of %d turns (%.1f%%)%n",
+                    this.candidateDisagreements, this.candidateChecks,
+                    100d * this.candidateDisagreements
+                            / this.candidateChecks);
+        }
+        out.printf("  turn latency: p50 < %s, p99 < %s, longest %.3f ms%n",
+                bucketLimit(this.percentileBucket(0.5)),
+                bucketLimit(this.percentileBucket(0.99)),
+                this.longestTurnNanos / 1e6);
+        for (int k = 0; k < BUCKETS; k++) {
+            if (this.histogram[k] > 0) {
+                out.printf("  %12s %8d%n", "< " + bucketLimit(k),
+                        this.histogram[k]);
+            }
+        }
+    }
+
+    /**
+     * Finds the histogram bucket a percentile of turns falls in.
+     * @param fraction The percentile, between 0 and 1.
+     * @return The first bucket by which that share of turns is reached.
+     */
+    private int percentileBucket(double fraction) {
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            seen += this.histogram[k];
+            if (seen >= fraction * this.turns) {
+                return k;
+            }
+        }
+        return BUCKETS - 1;
+    }
+
+    /**
+     * Describes the upper limit of a histogram bucket.
+     * @param bucket The bucket in question.
+     * @return The limit, in the most readable unit.
+     */
+    private static String bucketLimit(int bucket) {
+        long micros = 1L << bucket;
+        if (micros >= 1000000) {
+            return micros / 1000000 + " s";
+        }
+        if (micros >= 1000) {
+            return micros / 1000 + " ms";
+        }
+        return micros + " us";
+    }
+}
@@ -0,0 +1,599 @@
+import com.orbischallenge.ctz.objects.enums.Direction;
+import com.orbischallenge.game.engine.*;
+
+public class TwoPlySearch {
+    /**
+     * All of the directions, in the order the game lists them, which is the
+     * order the joint move search numbers them in, and how far moving in each
+     * shifts a unit along either axis.
+     */
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int[] DIRECTION_X = new int[DIRECTIONS.length];
+    private static final int[] DIRECTION_Y = new int[DIRECTIONS.length];
+
+    static {
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            Point step = DIRECTIONS[d].movePoint(Point.origin());
+            DIRECTION_X[d] = step.getX();
+            DIRECTION_Y[d] = step.getY();
+        }
+    }
+
+    /**
+     * The width of the square of tiles a unit can reach in two moves.
+     */
+    static final int WINDOW = 5;
+
+    /**
+     * The number of entries in the transposition table. Must be a power of
+     * two.
+     */
+    static final int TABLE_SIZE = 1 << 16;
+
+    /**
+     * The number of best pairs of moves each unit may choose from, or zero to
+     * let it choose from all of them. Every pair already ends on a different
+     * tile, so this is at most the number of tiles in the window.
+     */
+    int optionLimit = 9;
+
+    /**
+     * How much the second move counts for, relative to the first. It is
+     * less than one, as the enemies will have moved by then.
+     */
+    double discount = 0.5;
+
+    /**
+     * The value of every unit standing on every tile it could reach in two
+     * moves, indexed by [unit][(dx + 2) * WINDOW + dy + 2] for the tile dx
+     * and dy away from where it starts.
+     */
+    double[][] secondValues;
+
+    /**
+     * The map, used to find which tiles the second move can reach.
+     */
+    MapGrid grid;
+
+    /**
+     * The time allowed for this turn, or null to search until done.
+     */
+    TurnBudget budget;
+
+    /**
+     * The share of the turn's budget after which the search stops, leaving
+     * the rest of the turn to give the orders. Looking two moves ahead often
+     * can't finish in time on open maps, unlike a single move.
+     */
+    double budgetShare = 0.9;
+
+    /**
+     * The first move of the best pair of moves found by the last plan, for
+     * every unit, and the total goodness of both moves.
+     */
+    int[] bestDirections;
+    double bestGoodness;
+
+    /**
+     * Whether or not the last plan was cut short by the deadline.
+     */
+    boolean timedOut;
+
+    /**
+     * The number of plans the last search looked at, the number of branches
+     * it skipped, and how often the goodness of the position after the second
+     * move was found in the transposition table rather than worked out.
+     */
+    long nodesExpanded;
+    long nodesPruned;
+    long tableHits;
+    long tableMisses;
+
+    /**
+     * The number of path lengths looked up on the last plan.
+     */
+    long distanceQueries;
+
+    /**
+     * The transposition table, which maps the positions of the units after
+     * their second move to the goodness of that position. Entries come in
+     * pairs: the first of a pair is only replaced by a newer search, while the
+     * second is always replaced, so that neither the oldest nor the newest
+     * positions can crowd out the other.
+     *
+     * Everything the goodness depends on besides the positions, such as the
+     * pickups and control points, stays the same for a whole turn, so every
+     * entry is stamped with the search that wrote it, and entries from
+     * earlier searches are ignored.
+     */
+    private final long[] tableKeys = new long[TABLE_SIZE];
+    private final double[] tableValues = new double[TABLE_SIZE];
+    private final int[] tableGenerations = new int[TABLE_SIZE];
+    private int generation;
+
+    /**
+     * A random key for every unit standing on every passable tile. The hash
+     * of a position is the exclusive or of the keys of every living unit in
+     * it.
+     */
+    private long[][] zobrist;
+
+    /**
+     * The tile every unit starts the turn on.
+     */
+    private int[] startX;
+    private int[] startY;
+
+    /**
+     * The pairs of moves each unit may make, best first: the first move, the
+     * ID of the tile the second ends on, and the value of that tile.
+     */
+    private int[][] optionFirst;
+    private int[][] optionTile;
+    private double[][] optionSecondValue;
+    private int[] optionCounts;
+
+    /**
+     * The weight of every unit's first move, and the best weighted first
+     * and second values that remain from each unit onwards.
+     */
+    private double[] factors;
+    private double[] restFirst;
+    private double[] restSecond;
+
+    /**
+     * The pair of moves chosen so far for each unit.
+     */
+    private int[] choiceFirst;
+    private int[] choiceTile;
+
+    /**
+     * The smallest and largest factor the unity ratio could scale the
+     * action values of each move by.
+     */
+    private double minimumFirst;
+    private double maximumFirst;
+    private double minimumSecond;
+    private double maximumSecond;
+
+    /**
+     * The moves being planned.
+     */
+    private JointMoveSearch moves;
+
+    /**
+     * Plans two moves ahead: chooses every unit's move this turn so that the
+     * goodness of this turn's moves, plus the discounted goodness of the best
+     * moves that could follow next turn, is as large as possible. Both are
+     * scored like the joint move search scores one move, except that the
+     * value of the tile each unit ends on after the second move is taken
+     * from secondValues.
+     *
+     * Many different pairs of moves end on the same tiles, so the goodness
+     * of the second position is kept in the transposition table rather than
+     * worked out again. The search starts from the best single move found by
+     * the joint move search, which must have been run first, followed by
+     * standing still, so it always has a plan to fall back on.
+     * @param moves The action values and positions of every unit, after a
+     * search.
+     */
+    public void plan(JointMoveSearch moves) {
+        this.moves = moves;
+        int units = moves.units;
+        if (this.bestDirections == null
+                || this.bestDirections.length != units) {
+            this.bestDirections = new int[units];
+            this.factors = new double[units];
+            this.restFirst = new double[units + 1];
+            this.restSecond = new double[units + 1];
+            this.choiceFirst = new int[units];
+            this.choiceTile = new int[units];
+            int pairs = DIRECTIONS.length * DIRECTIONS.length;
+            this.optionFirst = new int[units][pairs];
+            this.optionTile = new int[units][pairs];
+            this.optionSecondValue = new double[units][pairs];
+            this.optionCounts = new int[units];
+            this.startX = new int[units];
+            this.startY = new int[units];
+        }
+        if (this.zobrist == null || this.zobrist.length != units
+                || this.zobrist[0].length != this.grid.tileCount) {
+            java.util.Random random = new java.util.Random(0x5eed);
+            this.zobrist = new long[units][this.grid.tileCount];
+            for (long[] keys : this.zobrist) {
+                for (int t = 0; t < keys.length; t++) {
+                    keys[t] = random.nextLong();
+                }
+            }
+        }
+        this.generation++;
+        this.nodesExpanded = 0;
+        this.nodesPruned = 0;
+        this.tableHits = 0;
+        this.tableMisses = 0;
+        this.distanceQueries = 0;
+        this.timedOut = false;
+        System.arraycopy(moves.bestDirections, 0, this.bestDirections, 0,
+                units);
+        this.bestGoodness = Double.NEGATIVE_INFINITY;
+        if (!moves.found) {
+            return;
+        }
+        for (int i = 0; i < units; i++) {
+            this.listOptions(i);
+        }
+        this.computeMultipliers();
+        // Start from the best single move, followed by standing still.
+        for (int i = 0; i < units; i++) {
+            this.choiceFirst[i] = moves.bestDirections[i];
+            this.choiceTile[i] = moves.tiles[i][moves.bestDirections[i]];
+        }
+        this.computeFactors(this.choiceFirst[0]);
+        double first = 0;
+        double second = 0;
+        int unity = 0;
+        long hash = 0;
+        for (int i = 0; i < units; i++) {
+            first += moves.actionValue[i][this.choiceFirst[i]]
+                    * this.factors[i];
+            second += this.secondValue(i, this.choiceTile[i]);
+            unity += this.newDistances(i, this.choiceFirst[i]);
+            hash ^= this.key(i, this.choiceTile[i]);
+        }
+        this.evaluate(first, unity, second, hash);
+        this.expand(0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Lists the pairs of moves a unit may make, best first. The first move
+     * must be one the joint move search allows, and the second must not walk
+     * into a wall. Dead units never move a second time.
+     *
+     * Of the pairs that end on the same tile, only the one with the best
+     * first move is kept. The others can only do better by keeping clear of
+     * another unit's first move, or by keeping the units closer together
+     * in between, which is rarely worth a worse first move. Of what is left,
+     * only the best optionLimit pairs are kept, which is what lets the
+     * search finish well within a turn with four units.
+     * @param unit The unit in question.
+     */
+    private void listOptions(int unit) {
+        JointMoveSearch moves = this.moves;
+        int d0 = moves.getOrder(unit)[0];
+        this.startX[unit] =
+                this.grid.tileX[moves.tiles[unit][d0]] - DIRECTION_X[d0];
+        this.startY[unit] =
+                this.grid.tileY[moves.tiles[unit][d0]] - DIRECTION_Y[d0];
+        int count = 0;
+        for (int k = 0; k < moves.getOrderCount(unit); k++) {
+            int d1 = moves.getOrder(unit)[k];
+            int first = moves.tiles[unit][d1];
+            int x = this.grid.tileX[first];
+            int y = this.grid.tileY[first];
+            for (int d2 = 0; d2 < DIRECTIONS.length; d2++) {
+                if (!moves.alive[unit] && d2 != moves.nowhere) {
+                    continue;
+                }
+                int tile = this.grid.getTileId(x + DIRECTION_X[d2],
+                        y + DIRECTION_Y[d2]);
+                if (tile < 0 || this.hasOption(unit, count, tile)) {
+                    // First moves are tried best first, so the pair already
+                    // listed for this tile has the better one.
+                    continue;
+                }
+                double second = this.secondValue(unit, tile);
+                double score = moves.actionValue[unit][d1]
+                        + this.discount * second;
+                int j = count++;
+                while (j > 0 && moves.actionValue[unit][this.optionFirst[unit][j - 1]]
+                        + this.discount * this.optionSecondValue[unit][j - 1]
+                        < score) {
+                    this.optionFirst[unit][j] = this.optionFirst[unit][j - 1];
+                    this.optionTile[unit][j] = this.optionTile[unit][j - 1];
+                    this.optionSecondValue[unit][j] =
+                            this.optionSecondValue[unit][j - 1];
+                    j--;
+                }
+                this.optionFirst[unit][j] = d1;
+                this.optionTile[unit][j] = tile;
+                this.optionSecondValue[unit][j] = second;
+            }
+        }
+        if (this.optionLimit > 0) {
+            count = Math.min(count, this.optionLimit);
+        }
+        this.optionCounts[unit] = count;
+    }
+
+    /**
+     * Determines whether a pair of moves ending on a tile has been listed
+     * for a unit already.
+     * @param unit The unit in question.
+     * @param count The number of pairs listed so far.
+     * @param tile The ID of the tile.
+     * @return Whether or not some pair ends on the tile.
+     */
+    private boolean hasOption(int unit, int count, int tile) {
+        for (int k = 0; k < count; k++) {
+            if (this.optionTile[unit][k] == tile) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks up the value of a unit standing on a tile after its second move,
+     * which must be within two tiles of where it starts.
+     * @param unit The unit in question.
+     * @param tile The ID of the tile.
+     * @return The value of the tile to the unit, or zero for dead units.
+     */
+    private double secondValue(int unit, int tile) {
+        if (!this.moves.alive[unit]) {
+            return 0;
+        }
+        return this.secondValues[unit][(this.grid.tileX[tile]
+                - this.startX[unit] + 2) * WINDOW
+                + this.grid.tileY[tile] - this.startY[unit] + 2];
+    }
+
+    /**
+     * Finds the key of a unit standing on a tile after its second move.
+     * @param unit The unit in question.
+     * @param tile The ID of the tile.
+     * @return The key, or zero for dead units, which don't count.
+     */
+    private long key(int unit, int tile) {
+        return this.moves.alive[unit] ? this.zobrist[unit][tile] : 0;
+    }
+
+    /**
+     * Computes the range the unity ratio can take after either move. Units
+     * move at most one tile per move, so every distance between two units
+     * can change by at most two per move.
+     */
+    private void computeMultipliers() {
+        JointMoveSearch moves = this.moves;
+        int units = moves.units;
+        int minimumFirst = 0;
+        int maximumFirst = 0;
+        int minimumSecond = 0;
+        int maximumSecond = 0;
+        for (int i = 0; i < units; i++) {
+            for (int j = 0; j < i; j++) {
+                if (!moves.alive[i] || !moves.alive[j]) {
+                    continue;
+                }
+                int len = this.pathLength(
+                        this.grid.getTileId(this.startX[i], this.startY[i]),
+                        this.grid.getTileId(this.startX[j], this.startY[j]));
+                minimumFirst += Math.max(1, len - 2);
+                maximumFirst += len + 2;
+                minimumSecond += Math.max(1, len - 4);
+                maximumSecond += len + 4;
+            }
+        }
+        if (moves.getAliveCount() < 2) {
+            minimumFirst = maximumFirst = minimumSecond = maximumSecond = 1;
+        }
+        this.maximumFirst = this.multiplier(minimumFirst);
+        this.minimumFirst = this.multiplier(maximumFirst);
+        this.maximumSecond = this.multiplier(minimumSecond);
+        this.minimumSecond = this.multiplier(maximumSecond);
+    }
+
+    /**
+     * Computes the factor the action values are scaled by for a given total
+     * distance between the units.
+     * @param unity The total distance between the living units.
+     * @return The unity ratio, raised to the search's exponent.
+     */
+    private double multiplier(int unity) {
+        return Math.pow(1d * this.moves.currentUnity / unity,
+                this.moves.exponent);
+    }
+
+    /**
+     * Looks up the length of the shortest path between two tiles.
+     * @param a The ID of the first tile.
+     * @param b The ID of the second tile.
+     * @return The length of the path.
+     */
+    private int pathLength(int a, int b) {
+        this.distanceQueries++;
+        return this.moves.distanceTable.getPathLength(this.moves.world, a, b);
+    }
+
+    /**
+     * Computes the weight of every unit's first move, and the best values
+     * that remain from each unit onwards.
+     * @param d0 The first move of the first unit.
+     */
+    private void computeFactors(int d0) {
+        int units = this.moves.units;
+        for (int i = 0; i < units; i++) {
+            this.factors[i] = this.moves.getFactor(i, d0);
+        }
+        this.restFirst[units] = 0;
+        this.restSecond[units] = 0;
+        for (int i = units - 1; i >= 0; i--) {
+            double first = Double.NEGATIVE_INFINITY;
+            double second = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < this.optionCounts[i]; k++) {
+                first = Math.max(first, this.moves.actionValue[i][
+                        this.optionFirst[i][k]] * this.factors[i]);
+                second = Math.max(second, this.optionSecondValue[i][k]);
+            }
+            this.restFirst[i] = this.restFirst[i + 1] + first;
+            this.restSecond[i] = this.restSecond[i + 1] + second;
+        }
+    }
+
+    /**
+     * Bounds the goodness of any plan whose values sum to at most the given
+     * values.
+     * @param first The largest possible sum of weighted first move values.
+     * @param second The largest possible sum of second move values.
+     * @return The largest possible total goodness.
+     */
+    private double upperBound(double first, double second) {
+        return first * (first >= 0 ? this.maximumFirst : this.minimumFirst)
+                + this.discount * second * (second >= 0
+                ? this.maximumSecond : this.minimumSecond);
+    }
+
+    /**
+     * Sums the distances between a living unit after its first move and the
+     * living units before it.
+     * @param unit The unit that is moving.
+     * @param d The direction of its first move.
+     * @return The distance added to the unity factor by this unit.
+     */
+    private int newDistances(int unit, int d) {
+        int added = 0;
+        if (this.moves.alive[unit]) {
+            for (int j = 0; j < unit; j++) {
+                if (this.moves.alive[j]) {
+                    added += this.moves.getMoveDistance(unit, d, j,
+                            this.choiceFirst[j]);
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Tries every pair of moves for the given unit, and searches onwards
+     * from each one that could still lead to a better plan.
+     * @param unit The unit whose moves are being chosen.
+     * @param first The weighted first move values of the units before it.
+     * @param unity The total distance between the living units before it
+     * after their first move.
+     * @param second The second move values of the units before it.
+     * @param hash The hash of the positions of the units before it after
+     * their second move.
+     */
+    private void expand(int unit, double first, int unity, double second,
+                        long hash) {
+        JointMoveSearch moves = this.moves;
+        for (int k = 0; k < this.optionCounts[unit]; k++) {
+            if ((this.nodesExpanded & 255) == 0 && this.budget != null
+                    && this.budget.getElapsedNanos()
+                    > this.budget.budgetNanos * this.budgetShare) {
+                this.timedOut = true;
+            }
+            if (this.timedOut) {
+                return;
+            }
+            int d = this.optionFirst[unit][k];
+            int tile = this.optionTile[unit][k];
+            if (moves.alive[unit] && this.collides(unit, d, tile)) {
+                continue;
+            }
+            if (unit == 0) {
+                this.computeFactors(d);
+            }
+            double newFirst = first + moves.actionValue[unit][d]
+                    * this.factors[unit];
+            double newSecond = second + this.optionSecondValue[unit][k];
+            if (this.upperBound(newFirst + this.restFirst[unit + 1],
+                    newSecond + this.restSecond[unit + 1])
+                    < this.bestGoodness - JointMoveSearch.BOUND_SLACK
+                    * Math.max(1, Math.abs(this.bestGoodness))) {
+                this.nodesPruned++;
+                continue;
+            }
+            this.nodesExpanded++;
+            this.choiceFirst[unit] = d;
+            this.choiceTile[unit] = tile;
+            int newUnity = unity + this.newDistances(unit, d);
+            long newHash = hash ^ this.key(unit, tile);
+            if (unit + 1 < moves.units) {
+                this.expand(unit + 1, newFirst, newUnity, newSecond, newHash);
+            } else {
+                this.evaluate(newFirst, newUnity, newSecond, newHash);
+            }
+        }
+    }
+
+    /**
+     * Determines whether a living unit would end up on the same tile as one
+     * of the living units before it after either move.
+     * @param unit The unit that is moving.
+     * @param d The direction of its first move.
+     * @param tile The ID of the tile its second move ends on.
+     * @return Whether or not the unit collides with an earlier unit.
+     */
+    private boolean collides(int unit, int d, int tile) {
+        int first = this.moves.tiles[unit][d];
+        for (int j = 0; j < unit; j++) {
+            if (this.moves.alive[j]
+                    && (this.moves.tiles[j][this.choiceFirst[j]] == first
+                    || this.choiceTile[j] == tile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates a complete plan, and keeps it if it is the best so far.
+     * @param first The sum of the weighted first move values of all units.
+     * @param unity The total distance between all living units after their
+     * first move.
+     * @param second The sum of the second move values of all units.
+     * @param hash The hash of the positions after the second move.
+     */
+    private void evaluate(double first, int unity, double second, long hash) {
+        int resultingUnity = this.moves.getAliveCount() < 2 ? 1 : unity;
+        double goodness = first * this.multiplier(resultingUnity)
+                + this.discount * this.secondGoodness(second, hash);
+        if (goodness > this.bestGoodness) {
+            this.bestGoodness = goodness;
+            System.arraycopy(this.choiceFirst, 0, this.bestDirections, 0,
+                    this.moves.units);
+        }
+    }
+
+    /**
+     * Finds the goodness of the position after the second move, from the
+     * transposition table if it is there, and otherwise by measuring how far
+     * apart the units are.
+     * @param second The sum of the second move values of all units.
+     * @param hash The hash of the position.
+     * @return The goodness of the position.
+     */
+    private double secondGoodness(double second, long hash) {
+        int slot = (int) hash & (TABLE_SIZE - 2);
+        for (int s = slot; s < slot + 2; s++) {
+            if (this.tableKeys[s] == hash
+                    && this.tableGenerations[s] == this.generation) {
+                this.tableHits++;
+                return this.tableValues[s];
+            }
+        }
+        this.tableMisses++;
+        int unity = 0;
+        JointMoveSearch moves = this.moves;
+        for (int i = 0; i < moves.units; i++) {
+            for (int j = 0; j < i; j++) {
+                if (moves.alive[i] && moves.alive[j]) {
+                    unity += this.pathLength(this.choiceTile[i],
+                            this.choiceTile[j]);
+                }
+            }
+        }
+        double goodness = second
+                * this.multiplier(moves.getAliveCount() < 2 ? 1 : unity);
+        // Keep the first entry of the pair for as long as this search runs,
+        // and put everything else in the second.
+        if (this.tableGenerations[slot] == this.generation) {
+            slot++;
+        }
+        this.tableKeys[slot] = hash;
+        this.tableValues[slot] = goodness;
+        this.tableGenerations[slot] = this.generation;
+        return goodness;
+    }
+}
@@ -0,0 +1,47 @@
+public class UnityConstraint implements MoveConstraint {
+    @Override
+    public boolean allows(JointMoveSearch moves, int[] chosen, int unit,
+                          int direction) {
+        return true;
+    }
+
+    /**
+     * Rewards moves that bring the living units closer together, by the ratio
+     * of their total separation before and after moving.
+     *
+     * While only some of the units have been placed, the separation of all
+     * of them is estimated from the pairs that have been placed so far, so
+     * that partial plans can be compared on the same scale.
+     */
+    @Override
+    public double getMultiplier(JointMoveSearch moves, int[] chosen,
+                                int count) {
+        int total = 0;
+        int pairs = 0;
+        for (int i = 0; i < count; i++) {
+            if (!moves.alive[i]) {
+                continue;
+            }
+            for (int j = 0; j < i; j++) {
+                if (moves.alive[j]) {
+                    total += moves.getMoveDistance(i, chosen[i], j, chosen[j]);
+                    pairs++;
+                }
+            }
+        }
+        int aliveCount = moves.getAliveCount();
+        int allPairs = aliveCount * (aliveCount - 1) / 2;
+        double resultingUnity;
+        if (aliveCount < 2) {
+            resultingUnity = 1;
+        } else if (pairs == allPairs) {
+            resultingUnity = total;
+        } else if (pairs == 0) {
+            return 1;
+        } else {
+            resultingUnity = 1d * total * allPairs / pairs;
+        }
+        return Math.pow(1d * moves.currentUnity / resultingUnity,
+                moves.exponent);
+    }
+}